@@ -12,6 +12,7 @@ android {
         versionName = property("VERSION_NAME").toString()
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        consumerProguardFiles("consumer-rules.pro")
     }
 
     buildTypes {
@@ -20,13 +21,19 @@ android {
             proguardFiles(getDefaultProguardFile("proguard-android.txt"), "proguard-rules.pro")
         }
     }
+
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
 }
 
 dependencies {
     api("androidx.annotation:annotation:${property("ANDROIDX_ANNOTATION")}")
     api("androidx.lifecycle:lifecycle-common:${property("ANDROIDX_LIFECYCLE")}")
+    compileOnly("androidx.startup:startup-runtime:${property("ANDROIDX_STARTUP")}")
 
     testImplementation("junit:junit:${property("JUNIT_VERSION")}")
+    testImplementation("org.robolectric:robolectric:${property("ROBOLECTRIC_VERSION")}")
     androidTestImplementation("androidx.test:runner:${property("ANDROIDX_TEST_RUNNER")}")
     androidTestImplementation("androidx.test:rules:${property("ANDROIDX_TEST_RULES")}")
     androidTestImplementation("androidx.test.ext:junit:${property("ANDROIDX_TEST_JUNIT")}")
@@ -0,0 +1,2 @@
+# androidx.startup is a compileOnly dependency, ActivityMonitorInitializer is only used by apps that depend on it
+-dontwarn androidx.startup.Initializer
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The created activities of one class, in creation order. The stack is only touched by the main thread,
+ * the count and the top are published for other threads after every change
+ */
+final class ActivityClassBucket {
+
+    @NonNull
+    final ActivityStack stack = new ActivityStack(ActivityRecord.FLAG_CLASS);
+    volatile int count;
+    @Nullable
+    volatile ActivityRecord top;
+
+    void push(@NonNull ActivityRecord record) {
+        stack.push(record);
+        publish();
+    }
+
+    void remove(@NonNull ActivityRecord record) {
+        stack.remove(record);
+        publish();
+    }
+
+    private void publish() {
+        top = stack.top();
+        count = stack.size();
+    }
+}
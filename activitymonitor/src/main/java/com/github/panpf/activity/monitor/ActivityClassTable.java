@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives every Activity class a small int index, so that records can refer to the class with a primitive.
+ * Indexes are assigned on the main thread, names can be read from any thread
+ */
+final class ActivityClassTable {
+
+    @NonNull
+    private final Map<Class<?>, Integer> indexMap = new HashMap<>();
+    @NonNull
+    private volatile String[] classNames = new String[0];
+
+    int indexOf(@NonNull Class<?> activityClass) {
+        Integer index = indexMap.get(activityClass);
+        if (index == null) {
+            String[] oldClassNames = classNames;
+            String[] newClassNames = Arrays.copyOf(oldClassNames, oldClassNames.length + 1);
+            newClassNames[oldClassNames.length] = activityClass.getName();
+            index = oldClassNames.length;
+            indexMap.put(activityClass, index);
+            classNames = newClassNames;
+        }
+        return index;
+    }
+
+    @Nullable
+    String getClassName(int index) {
+        String[] classNames = this.classNames;
+        return index >= 0 && index < classNames.length ? classNames[index] : null;
+    }
+}
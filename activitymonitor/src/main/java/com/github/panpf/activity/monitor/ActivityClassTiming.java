@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Screen time of all the activities of one class, accumulated as they pause and stop, so the time of an Activity that is
+ * still resumed or started is not counted until it pauses or stops. Immutable, a snapshot taken by {@link ActivityMonitor#getActivityClassTimings()}
+ */
+public final class ActivityClassTiming {
+
+    @NonNull
+    private final String activityClassName;
+    private final int createdCount;
+    private final int startedCount;
+    private final int resumedCount;
+    private final long totalStartedNanos;
+    private final long totalResumedNanos;
+    private final long averageTimeToFirstResumeNanos;
+    private final long maxTimeToFirstResumeNanos;
+
+    ActivityClassTiming(@NonNull String activityClassName, int createdCount, int startedCount, int resumedCount,
+                        long totalStartedNanos, long totalResumedNanos, long averageTimeToFirstResumeNanos, long maxTimeToFirstResumeNanos) {
+        this.activityClassName = activityClassName;
+        this.createdCount = createdCount;
+        this.startedCount = startedCount;
+        this.resumedCount = resumedCount;
+        this.totalStartedNanos = totalStartedNanos;
+        this.totalResumedNanos = totalResumedNanos;
+        this.averageTimeToFirstResumeNanos = averageTimeToFirstResumeNanos;
+        this.maxTimeToFirstResumeNanos = maxTimeToFirstResumeNanos;
+    }
+
+    @NonNull
+    public String getActivityClassName() {
+        return activityClassName;
+    }
+
+    public int getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * How many times an Activity of this class went from started to stopped
+     */
+    public int getStartedCount() {
+        return startedCount;
+    }
+
+    /**
+     * How many times an Activity of this class went from resumed to paused
+     */
+    public int getResumedCount() {
+        return resumedCount;
+    }
+
+    public long getTotalStartedNanos() {
+        return totalStartedNanos;
+    }
+
+    public long getTotalResumedNanos() {
+        return totalResumedNanos;
+    }
+
+    /**
+     * @return 0: No Activity of this class has been resumed yet
+     */
+    public long getAverageTimeToFirstResumeNanos() {
+        return averageTimeToFirstResumeNanos;
+    }
+
+    public long getMaxTimeToFirstResumeNanos() {
+        return maxTimeToFirstResumeNanos;
+    }
+}
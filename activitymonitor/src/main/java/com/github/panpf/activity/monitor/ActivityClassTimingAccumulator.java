@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Accumulates the screen time of one Activity class on the main thread and publishes an immutable
+ * {@link ActivityClassTiming} after every change, so other threads never see a half updated or torn value
+ */
+final class ActivityClassTimingAccumulator {
+
+    @NonNull
+    private final String activityClassName;
+
+    private int createdCount;
+    private int startedCount;
+    private int resumedCount;
+    private long totalStartedNanos;
+    private long totalResumedNanos;
+    private int firstResumedCount;
+    private long totalTimeToFirstResumeNanos;
+    private long maxTimeToFirstResumeNanos;
+
+    @NonNull
+    private volatile ActivityClassTiming timing;
+
+    ActivityClassTimingAccumulator(@NonNull String activityClassName) {
+        this.activityClassName = activityClassName;
+        this.timing = newTiming();
+    }
+
+    @NonNull
+    ActivityClassTiming getTiming() {
+        return timing;
+    }
+
+    void addCreated() {
+        createdCount++;
+        timing = newTiming();
+    }
+
+    void addStarted(long startedNanos) {
+        startedCount++;
+        totalStartedNanos += startedNanos;
+        timing = newTiming();
+    }
+
+    void addResumed(long resumedNanos) {
+        resumedCount++;
+        totalResumedNanos += resumedNanos;
+        timing = newTiming();
+    }
+
+    void addTimeToFirstResume(long timeToFirstResumeNanos) {
+        firstResumedCount++;
+        totalTimeToFirstResumeNanos += timeToFirstResumeNanos;
+        if (timeToFirstResumeNanos > maxTimeToFirstResumeNanos) {
+            maxTimeToFirstResumeNanos = timeToFirstResumeNanos;
+        }
+        timing = newTiming();
+    }
+
+    @NonNull
+    private ActivityClassTiming newTiming() {
+        return new ActivityClassTiming(activityClassName, createdCount, startedCount, resumedCount, totalStartedNanos, totalResumedNanos,
+                firstResumedCount > 0 ? totalTimeToFirstResumeNanos / firstResumedCount : 0, maxTimeToFirstResumeNanos);
+    }
+}
@@ -19,771 +19,1431 @@ package com.github.panpf.activity.monitor;
 import android.app.Activity;
 import android.app.Application;
 import android.os.Bundle;
+import android.os.Process;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleEventObserver;
 import androidx.lifecycle.LifecycleOwner;
 
-import java.lang.ref.WeakReference;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ActivityMonitor {
 
     @NonNull
-    private static final Object LIST_EDIT_LOCK = new Object();
-    private static final Object COUNT_EDIT_LOCK = new Object();
+    private static final Object RECORD_INDEX_LOCK = new Object();
+
+    @NonNull
+    private static final Object BATCHERS_LOCK = new Object();
+    @NonNull
+    private static final LifecycleEventBatcher[] EMPTY_BATCHERS = new LifecycleEventBatcher[0];
 
     @NonNull
     private static final ActivityMonitor INSTANCE = new ActivityMonitor();
 
     @NonNull
-    private final List<WeakReference<Activity>> createdActivityReverseList = new LinkedList<>();
+    private final ActivityStack createdActivityStack = new ActivityStack(ActivityRecord.FLAG_CREATED);
+    @NonNull
+    private final ActivityStack startedActivityStack = new ActivityStack(ActivityRecord.FLAG_STARTED);
+    @NonNull
+    private final ActivityStack resumedActivityStack = new ActivityStack(ActivityRecord.FLAG_RESUMED);
+    @NonNull
+    private final ActivityRecordIndex recordIndex = new ActivityRecordIndex();
+    @NonNull
+    private final ReferenceQueue<Activity> referenceQueue = new ReferenceQueue<>();
     @NonNull
-    private final List<WeakReference<Activity>> startedActivityReverseList = new LinkedList<>();
+    private final ForegroundStateMachine foregroundStateMachine = new ForegroundStateMachine(startedActivityStack);
     @NonNull
-    private final List<WeakReference<Activity>> resumedActivityReverseList = new LinkedList<>();
+    private final ActivityClassTable classTable = new ActivityClassTable();
+    /*
+     * Keyed by class index
+     */
+    @NonNull
+    private final SparseArray<ActivityClassTimingAccumulator> classTimings = new SparseArray<>();
+    /*
+     * Created activities by exact class, written by the main thread
+     */
+    @NonNull
+    private final ConcurrentHashMap<Class<?>, ActivityClassBucket> classBuckets = new ConcurrentHashMap<>();
 
+    /*
+     * The stacks are only touched by the main thread, other threads read the published state
+     */
+    @NonNull
+    private volatile MonitorState state = MonitorState.EMPTY;
+    @NonNull
+    private final MonitorStateNotifier stateNotifier = new MonitorStateNotifier();
+
+    private int lastActivityId;
+
+    private volatile boolean recreationTracking;
+    /**
+     * Kept in the created stack between the DESTROYED of a configuration change and the CREATED of the new instance
+     */
     @Nullable
-    private LinkedList<OnActivityCreatedListener> createdListeners;
+    private ActivityRecord recreatingRecord;
+
+    @NonNull
+    private final ListenerRegistry listenerRegistry = new ListenerRegistry();
+
     @Nullable
-    private LinkedList<OnActivityStartedListener> startedListeners;
+    private volatile DispatchProfiler profiler;
     @Nullable
-    private LinkedList<OnActivityResumedListener> resumedListeners;
+    private volatile LifecycleEventRecorder eventRecorder;
     @Nullable
-    private LinkedList<OnActivityPausedListener> pausedListeners;
+    private volatile FlightRecorder flightRecorder;
+    @NonNull
+    private volatile LifecycleEventBatcher[] batchers = EMPTY_BATCHERS;
     @Nullable
-    private LinkedList<OnActivityStoppedListener> stoppedListeners;
+    private volatile SharedStatePublisher sharedStatePublisher;
     @Nullable
-    private LinkedList<OnActivityDestroyedListener> destroyedListeners;
+    private volatile LeakWatcher leakWatcher;
     @Nullable
-    private LinkedList<OnActivitySaveInstanceStateListener> saveInstanceStateListeners;
+    private volatile MemoryTrimDispatcher memoryTrimDispatcher;
+
     @Nullable
-    private LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners;
+    private volatile Application application;
 
     private ActivityMonitor() {
     }
 
-    static void init(@NonNull Application application) {
-        application.registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacksImpl(INSTANCE));
+    /**
+     * Start monitoring. By default it is called by {@link ActivityMonitorInitProvider}, if the provider is disabled,
+     * call it in Application.onCreate() or use {@link ActivityMonitorInitializer}. Activities created before it are not monitored.
+     * Calling it more than once has no effect
+     */
+    public static void install(@NonNull Application application) {
+        synchronized (INSTANCE) {
+            if (INSTANCE.application != null) {
+                return;
+            }
+            INSTANCE.application = application;
+        }
+        application.registerActivityLifecycleCallbacks(newLifecycleCallbacks());
+        application.registerComponentCallbacks(obtainMemoryTrimDispatcher());
+    }
+
+    @NonNull
+    private static MemoryTrimDispatcher obtainMemoryTrimDispatcher() {
+        synchronized (INSTANCE) {
+            MemoryTrimDispatcher memoryTrimDispatcher = INSTANCE.memoryTrimDispatcher;
+            if (memoryTrimDispatcher == null) {
+                memoryTrimDispatcher = new MemoryTrimDispatcher();
+                INSTANCE.memoryTrimDispatcher = memoryTrimDispatcher;
+            }
+            return memoryTrimDispatcher;
+        }
     }
 
+    public static boolean isInstalled() {
+        return INSTANCE.application != null;
+    }
+
+    /**
+     * Lets the benchmarks drive the monitor with stub activities, without a real Application
+     */
+    @VisibleForTesting
+    @NonNull
+    static Application.ActivityLifecycleCallbacks newLifecycleCallbacks() {
+        return new ActivityLifecycleCallbacksImpl(INSTANCE);
+    }
+
+
+    /**
+     * When enabled, an Activity destroyed for a configuration change keeps its record, id and position in the stacks, and the new instance
+     * takes them over. Listeners get a single {@link LifecycleEvent#RECREATED} event instead of DESTROYED followed by CREATED,
+     * and the created count does not drop in between. Disabled by default
+     */
+    public static void setRecreationTracking(boolean enabled) {
+        INSTANCE.recreationTracking = enabled;
+    }
+
+    /**
+     * Get a consistent view of all three stacks with a single volatile read, can be called from any thread
+     */
+    @NonNull
+    public static MonitorState snapshot() {
+        return INSTANCE.state;
+    }
+
+    /**
+     * Get notified on the main thread instead of polling {@link #snapshot()}. Changes are conflated, the listener is called at most once
+     * per main loop turn with the latest state, and only when the foreground flag, the started count or the last resumed Activity has changed.
+     * It is not called on registration, use {@link #snapshot()} for the current state
+     *
+     * @return Disposing it is the same as {@link #unregisterMonitorStateChangedListener(OnMonitorStateChangedListener)}
+     */
+    @NonNull
+    public static Subscription registerMonitorStateChangedListener(@NonNull final OnMonitorStateChangedListener listener) {
+        INSTANCE.stateNotifier.addListener(listener);
+        return new UnregisterSubscription() {
+            @Override
+            void unregister() {
+                unregisterMonitorStateChangedListener(listener);
+            }
+        };
+    }
+
+    public static void unregisterMonitorStateChangedListener(@NonNull OnMonitorStateChangedListener listener) {
+        INSTANCE.stateNotifier.removeListener(listener);
+    }
+
+    public static void observeMonitorStateChanged(@NonNull LifecycleOwner owner, @NonNull final OnMonitorStateChangedListener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
+        }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerMonitorStateChangedListener(listener)));
+    }
 
     public static boolean isRunningForeground() {
-        return getStartedActivityCount() > 0;
+        return INSTANCE.state.isRunningForeground();
+    }
+
+    /**
+     * Unlike {@link #isRunningForeground()}, it does not flip during configuration changes and quick switches between activities,
+     * the app is only considered in the background after no Activity has been started for the grace period
+     *
+     * @see #setForegroundGracePeriod(long)
+     */
+    public static boolean isAppForeground() {
+        return INSTANCE.foregroundStateMachine.isForeground();
+    }
+
+    /**
+     * How long no Activity must be started before the app is considered in the background, 700 milliseconds by default
+     */
+    public static void setForegroundGracePeriod(long gracePeriodMillis) {
+        INSTANCE.foregroundStateMachine.setGracePeriodMillis(gracePeriodMillis);
     }
 
     public static int getCreatedActivityCount() {
-        synchronized (COUNT_EDIT_LOCK) {
-            return INSTANCE.createdActivityReverseList.size();
-        }
+        return INSTANCE.state.getCreatedActivityCount();
     }
 
     public static int getStartedActivityCount() {
-        synchronized (COUNT_EDIT_LOCK) {
-            return INSTANCE.startedActivityReverseList.size();
-        }
+        return INSTANCE.state.getStartedActivityCount();
     }
 
     public static int getResumedActivityCount() {
-        synchronized (COUNT_EDIT_LOCK) {
-            return INSTANCE.resumedActivityReverseList.size();
-        }
+        return INSTANCE.state.getResumedActivityCount();
     }
 
 
     @NonNull
     public static List<Activity> getCreatedActivityList() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> createdActivityStack = INSTANCE.createdActivityReverseList;
-            if (createdActivityStack.isEmpty()) {
-                return new ArrayList<>(0);
-            }
-            List<Activity> activityList = new ArrayList<>(createdActivityStack.size());
-            for (WeakReference<Activity> reference : createdActivityStack) {
-                Activity activity = reference.get();
-                if (activity != null) {
-                    activityList.add(activity);
-                }
-            }
-            Collections.reverse(activityList);
-            return activityList;
-        }
+        return INSTANCE.state.getCreatedActivityList();
     }
 
     @NonNull
     public static List<Activity> getStartedActivityList() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> startedActivityStack = INSTANCE.startedActivityReverseList;
-            if (startedActivityStack.isEmpty()) {
-                return new ArrayList<>(0);
-            }
-            List<Activity> activityList = new ArrayList<>(startedActivityStack.size());
-            for (WeakReference<Activity> reference : startedActivityStack) {
-                Activity activity = reference.get();
-                if (activity != null) {
-                    activityList.add(activity);
-                }
-            }
-            Collections.reverse(activityList);
-            return activityList;
-        }
+        return INSTANCE.state.getStartedActivityList();
     }
 
     @NonNull
     public static List<Activity> getResumedActivityList() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> resumedActivityStack = INSTANCE.resumedActivityReverseList;
-            if (resumedActivityStack.isEmpty()) {
-                return new ArrayList<>(0);
-            }
-            List<Activity> activityList = new ArrayList<>(resumedActivityStack.size());
-            for (WeakReference<Activity> reference : resumedActivityStack) {
-                Activity activity = reference.get();
-                if (activity != null) {
-                    activityList.add(activity);
-                }
-            }
-            Collections.reverse(activityList);
-            return activityList;
-        }
+        return INSTANCE.state.getResumedActivityList();
     }
 
     @Nullable
     public static Activity getLastCreatedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> createdActivityStack = INSTANCE.createdActivityReverseList;
-            WeakReference<Activity> lastCreatedActivityRef = !createdActivityStack.isEmpty() ? createdActivityStack.get(0) : null;
-            return lastCreatedActivityRef != null ? lastCreatedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getLastCreatedActivity();
     }
 
     @Nullable
     public static Activity getLastStartedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> startedActivityStack = INSTANCE.startedActivityReverseList;
-            WeakReference<Activity> lastStartedActivityRef = !startedActivityStack.isEmpty() ? startedActivityStack.get(0) : null;
-            return lastStartedActivityRef != null ? lastStartedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getLastStartedActivity();
     }
 
     @Nullable
     public static Activity getLastResumedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> resumedActivityStack = INSTANCE.resumedActivityReverseList;
-            WeakReference<Activity> lastResumedActivityRef = !resumedActivityStack.isEmpty() ? resumedActivityStack.get(0) : null;
-            return lastResumedActivityRef != null ? lastResumedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getLastResumedActivity();
     }
 
     @Nullable
     public static Activity getFirstCreatedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> createdActivityStack = INSTANCE.createdActivityReverseList;
-            WeakReference<Activity> lastCreatedActivityRef = !createdActivityStack.isEmpty() ? createdActivityStack.get(createdActivityStack.size() - 1) : null;
-            return lastCreatedActivityRef != null ? lastCreatedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getFirstCreatedActivity();
     }
 
     @Nullable
     public static Activity getFirstStartedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> startedActivityStack = INSTANCE.startedActivityReverseList;
-            WeakReference<Activity> lastStartedActivityRef = !startedActivityStack.isEmpty() ? startedActivityStack.get(startedActivityStack.size() - 1) : null;
-            return lastStartedActivityRef != null ? lastStartedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getFirstStartedActivity();
     }
 
     @Nullable
     public static Activity getFirstResumedActivity() {
-        synchronized (COUNT_EDIT_LOCK) {
-            List<WeakReference<Activity>> resumedActivityStack = INSTANCE.resumedActivityReverseList;
-            WeakReference<Activity> lastResumedActivityRef = !resumedActivityStack.isEmpty() ? resumedActivityStack.get(resumedActivityStack.size() - 1) : null;
-            return lastResumedActivityRef != null ? lastResumedActivityRef.get() : null;
-        }
+        return INSTANCE.state.getFirstResumedActivity();
     }
 
+    /**
+     * Add the created activities to the end of the given list, in the same order as {@link #getCreatedActivityList()}
+     *
+     * @return The number of activities added
+     */
+    public static int getCreatedActivities(@NonNull List<Activity> out) {
+        return MonitorState.addActivities(INSTANCE.state.createdReferences, out);
+    }
 
-    public static void registerActivityCreatedListener(@NonNull OnActivityCreatedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityCreatedListener> createdListeners = INSTANCE.createdListeners;
-            if (createdListeners != null) {
-                createdListeners.add(listener);
-            } else {
-                LinkedList<OnActivityCreatedListener> newCreatedListeners = new LinkedList<>();
-                newCreatedListeners.add(listener);
-                INSTANCE.createdListeners = newCreatedListeners;
-            }
+    /**
+     * Add the started activities to the end of the given list, in the same order as {@link #getStartedActivityList()}
+     *
+     * @return The number of activities added
+     */
+    public static int getStartedActivities(@NonNull List<Activity> out) {
+        return MonitorState.addActivities(INSTANCE.state.startedReferences, out);
+    }
+
+    /**
+     * Add the resumed activities to the end of the given list, in the same order as {@link #getResumedActivityList()}
+     *
+     * @return The number of activities added
+     */
+    public static int getResumedActivities(@NonNull List<Activity> out) {
+        return MonitorState.addActivities(INSTANCE.state.resumedReferences, out);
+    }
+
+    public static void forEachCreatedActivity(@NonNull ActivityVisitor visitor) {
+        forEachCreatedActivity(visitor, false);
+    }
+
+    /**
+     * Visit the created activities without copying them
+     *
+     * @param fromLast true: Start from the last created Activity; false: Start from the first created Activity
+     */
+    public static void forEachCreatedActivity(@NonNull ActivityVisitor visitor, boolean fromLast) {
+        MonitorState.forEachActivity(INSTANCE.state.createdReferences, visitor, fromLast);
+    }
+
+    public static void forEachStartedActivity(@NonNull ActivityVisitor visitor) {
+        forEachStartedActivity(visitor, false);
+    }
+
+    /**
+     * Visit the started activities without copying them
+     *
+     * @param fromLast true: Start from the last started Activity; false: Start from the first started Activity
+     */
+    public static void forEachStartedActivity(@NonNull ActivityVisitor visitor, boolean fromLast) {
+        MonitorState.forEachActivity(INSTANCE.state.startedReferences, visitor, fromLast);
+    }
+
+    public static void forEachResumedActivity(@NonNull ActivityVisitor visitor) {
+        forEachResumedActivity(visitor, false);
+    }
+
+    /**
+     * Visit the resumed activities without copying them
+     *
+     * @param fromLast true: Start from the last resumed Activity; false: Start from the first resumed Activity
+     */
+    public static void forEachResumedActivity(@NonNull ActivityVisitor visitor, boolean fromLast) {
+        MonitorState.forEachActivity(INSTANCE.state.resumedReferences, visitor, fromLast);
+    }
+
+    /**
+     * Get the number of created activities of exactly the given class, subclasses are not counted. O(1) and does not copy
+     */
+    public static int getActivityCount(@NonNull Class<? extends Activity> activityClass) {
+        ActivityClassBucket classBucket = INSTANCE.classBuckets.get(activityClass);
+        return classBucket != null ? classBucket.count : 0;
+    }
+
+    /**
+     * @see #getActivityCount(Class)
+     */
+    public static boolean containsActivity(@NonNull Class<? extends Activity> activityClass) {
+        return getActivityCount(activityClass) > 0;
+    }
+
+    /**
+     * Get the last created Activity of exactly the given class, subclasses are not included. O(1) and does not copy
+     */
+    @Nullable
+    public static Activity getTopActivity(@NonNull Class<? extends Activity> activityClass) {
+        ActivityClassBucket classBucket = INSTANCE.classBuckets.get(activityClass);
+        ActivityRecord top = classBucket != null ? classBucket.top : null;
+        return top != null ? top.reference.get() : null;
+    }
+
+    /**
+     * Get the id of the specified Activity, the id is assigned when the Activity is created and stays the same until it is destroyed
+     *
+     * @return -1: The Activity is not being monitored
+     */
+    public static int getActivityId(@NonNull Activity activity) {
+        synchronized (RECORD_INDEX_LOCK) {
+            ActivityRecord record = INSTANCE.recordIndex.find(activity);
+            return record != null ? record.id : -1;
         }
     }
 
-    public static void unregisterActivityCreatedListener(@NonNull OnActivityCreatedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityCreatedListener> createdListeners = INSTANCE.createdListeners;
-            if (createdListeners != null) {
-                createdListeners.remove(listener);
-            }
+    @Nullable
+    public static Activity getActivityById(int activityId) {
+        synchronized (RECORD_INDEX_LOCK) {
+            ActivityRecord record = INSTANCE.recordIndex.findById(activityId);
+            return record != null ? record.reference.get() : null;
         }
     }
 
+
+    @NonNull
+    public static Subscription registerActivityCreatedListener(@NonNull OnActivityCreatedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.CREATED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityCreatedListener(@NonNull OnActivityCreatedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.CREATED, false);
+    }
+
+    public static void unregisterActivityCreatedListener(@NonNull OnActivityCreatedListener listener) {
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.CREATED, false);
+    }
+
     public static void observeActivityCreated(@NonNull LifecycleOwner owner, @NonNull final OnActivityCreatedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityCreatedListener(listener);
-        owner.getLifecycle().addObserver(new CreatedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityCreatedListener(listener)));
     }
 
-    public static void registerActivityStartedListener(@NonNull OnActivityStartedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityStartedListener> startedListeners = INSTANCE.startedListeners;
-            if (startedListeners != null) {
-                startedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityStartedListener> newStartedListeners = new LinkedList<>();
-                newStartedListeners.add(listener);
-                INSTANCE.startedListeners = newStartedListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivityStartedListener(@NonNull OnActivityStartedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.STARTED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityStartedListener(@NonNull OnActivityStartedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.STARTED, false);
     }
 
     public static void unregisterActivityStartedListener(@NonNull OnActivityStartedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityStartedListener> startedListeners = INSTANCE.startedListeners;
-            if (startedListeners != null) {
-                startedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.STARTED, false);
     }
 
     public static void observeActivityStarted(@NonNull LifecycleOwner owner, @NonNull final OnActivityStartedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityStartedListener(listener);
-        owner.getLifecycle().addObserver(new StartedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityStartedListener(listener)));
     }
 
-    public static void registerActivityResumedListener(@NonNull OnActivityResumedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityResumedListener> resumedListeners = INSTANCE.resumedListeners;
-            if (resumedListeners != null) {
-                resumedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityResumedListener> newResumedListeners = new LinkedList<>();
-                newResumedListeners.add(listener);
-                INSTANCE.resumedListeners = newResumedListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivityResumedListener(@NonNull OnActivityResumedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.RESUMED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityResumedListener(@NonNull OnActivityResumedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.RESUMED, false);
     }
 
     public static void unregisterActivityResumedListener(@NonNull OnActivityResumedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityResumedListener> resumedListeners = INSTANCE.resumedListeners;
-            if (resumedListeners != null) {
-                resumedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.RESUMED, false);
     }
 
     public static void observeActivityResumed(@NonNull LifecycleOwner owner, @NonNull final OnActivityResumedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityResumedListener(listener);
-        owner.getLifecycle().addObserver(new ResumedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityResumedListener(listener)));
     }
 
-    public static void registerActivityPausedListener(@NonNull OnActivityPausedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityPausedListener> pausedListeners = INSTANCE.pausedListeners;
-            if (pausedListeners != null) {
-                pausedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityPausedListener> newPausedListeners = new LinkedList<>();
-                newPausedListeners.add(listener);
-                INSTANCE.pausedListeners = newPausedListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivityPausedListener(@NonNull OnActivityPausedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.PAUSED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityPausedListener(@NonNull OnActivityPausedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.PAUSED, false);
     }
 
     public static void unregisterActivityPausedListener(@NonNull OnActivityPausedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityPausedListener> pausedListeners = INSTANCE.pausedListeners;
-            if (pausedListeners != null) {
-                pausedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.PAUSED, false);
     }
 
     public static void observeActivityPaused(@NonNull LifecycleOwner owner, @NonNull final OnActivityPausedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityPausedListener(listener);
-        owner.getLifecycle().addObserver(new PausedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityPausedListener(listener)));
     }
 
-    public static void registerActivityStoppedListener(@NonNull OnActivityStoppedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityStoppedListener> stoppedListeners = INSTANCE.stoppedListeners;
-            if (stoppedListeners != null) {
-                stoppedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityStoppedListener> newStoppedListeners = new LinkedList<>();
-                newStoppedListeners.add(listener);
-                INSTANCE.stoppedListeners = newStoppedListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivityStoppedListener(@NonNull OnActivityStoppedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.STOPPED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityStoppedListener(@NonNull OnActivityStoppedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.STOPPED, false);
     }
 
     public static void unregisterActivityStoppedListener(@NonNull OnActivityStoppedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityStoppedListener> stoppedListeners = INSTANCE.stoppedListeners;
-            if (stoppedListeners != null) {
-                stoppedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.STOPPED, false);
     }
 
     public static void observeActivityStopped(@NonNull LifecycleOwner owner, @NonNull final OnActivityStoppedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityStoppedListener(listener);
-        owner.getLifecycle().addObserver(new StoppedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityStoppedListener(listener)));
     }
 
-    public static void registerActivityDestroyedListener(@NonNull OnActivityDestroyedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityDestroyedListener> destroyedListeners = INSTANCE.destroyedListeners;
-            if (destroyedListeners != null) {
-                destroyedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityDestroyedListener> newDestroyedListeners = new LinkedList<>();
-                newDestroyedListeners.add(listener);
-                INSTANCE.destroyedListeners = newDestroyedListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivityDestroyedListener(@NonNull OnActivityDestroyedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.DESTROYED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityDestroyedListener(@NonNull OnActivityDestroyedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.DESTROYED, false);
     }
 
     public static void unregisterActivityDestroyedListener(@NonNull OnActivityDestroyedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityDestroyedListener> destroyedListeners = INSTANCE.destroyedListeners;
-            if (destroyedListeners != null) {
-                destroyedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.DESTROYED, false);
     }
 
     public static void observeActivityDestroyed(@NonNull LifecycleOwner owner, @NonNull final OnActivityDestroyedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityDestroyedListener(listener);
-        owner.getLifecycle().addObserver(new DestroyedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityDestroyedListener(listener)));
     }
 
-    public static void registerActivitySaveInstanceStateListener(@NonNull OnActivitySaveInstanceStateListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivitySaveInstanceStateListener> saveInstanceStateListeners = INSTANCE.saveInstanceStateListeners;
-            if (saveInstanceStateListeners != null) {
-                saveInstanceStateListeners.add(listener);
-            } else {
-                LinkedList<OnActivitySaveInstanceStateListener> newSaveInstanceStateListeners = new LinkedList<>();
-                newSaveInstanceStateListeners.add(listener);
-                INSTANCE.saveInstanceStateListeners = newSaveInstanceStateListeners;
-            }
-        }
+    @NonNull
+    public static Subscription registerActivitySaveInstanceStateListener(@NonNull OnActivitySaveInstanceStateListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.SAVE_INSTANCE_STATE, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivitySaveInstanceStateListener(@NonNull OnActivitySaveInstanceStateListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.SAVE_INSTANCE_STATE, false);
     }
 
     public static void unregisterActivitySaveInstanceStateListener(@NonNull OnActivitySaveInstanceStateListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivitySaveInstanceStateListener> saveInstanceStateListeners = INSTANCE.saveInstanceStateListeners;
-            if (saveInstanceStateListeners != null) {
-                saveInstanceStateListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.SAVE_INSTANCE_STATE, false);
     }
 
     public static void observeActivitySaveInstanceState(@NonNull LifecycleOwner owner, @NonNull final OnActivitySaveInstanceStateListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivitySaveInstanceStateListener(listener);
-        owner.getLifecycle().addObserver(new SaveInstanceStateAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivitySaveInstanceStateListener(listener)));
     }
 
-    public static void registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = INSTANCE.lifecycleChangedListeners;
-            if (lifecycleChangedListeners != null) {
-                lifecycleChangedListeners.add(listener);
-            } else {
-                LinkedList<OnActivityLifecycleChangedListener> newLifecycleChangedListeners = new LinkedList<>();
-                newLifecycleChangedListeners.add(listener);
-                INSTANCE.lifecycleChangedListeners = newLifecycleChangedListeners;
-            }
+    /**
+     * Only called when recreation tracking is enabled
+     *
+     * @see #setRecreationTracking(boolean)
+     */
+    @NonNull
+    public static Subscription registerActivityRecreatedListener(@NonNull OnActivityRecreatedListener listener) {
+        return INSTANCE.listenerRegistry.add(listener, LifecycleEventMask.RECREATED, false);
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityRecreatedListener(@NonNull OnActivityRecreatedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.RECREATED, false);
+    }
+
+    public static void unregisterActivityRecreatedListener(@NonNull OnActivityRecreatedListener listener) {
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.RECREATED, false);
+    }
+
+    public static void observeActivityRecreated(@NonNull LifecycleOwner owner, @NonNull final OnActivityRecreatedListener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityRecreatedListener(listener)));
+    }
+
+    @NonNull
+    public static Subscription registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener) {
+        return registerActivityLifecycleChangedListener(listener, LifecycleEventMask.ALL | LifecycleEventMask.RECREATED);
+    }
+
+    /**
+     * @param events Only the events in the mask are delivered to the listener
+     */
+    @NonNull
+    public static Subscription registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener, @LifecycleEventMask int events) {
+        return INSTANCE.listenerRegistry.add(listener, events, true);
+    }
+
+    /**
+     * Only the events of activities of the given class or its subclasses are delivered, listeners for other classes cost nothing on dispatch
+     */
+    @NonNull
+    public static Subscription registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener, @LifecycleEventMask int events,
+                                                                @NonNull Class<? extends Activity> activityClass) {
+        return INSTANCE.listenerRegistry.add(listener, events, true, new Class<?>[]{activityClass});
+    }
+
+    /**
+     * Only the events of activities of the given classes or their subclasses are delivered, listeners for other classes cost nothing on dispatch
+     */
+    @NonNull
+    public static Subscription registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener, @LifecycleEventMask int events,
+                                                                @NonNull Collection<Class<? extends Activity>> activityClasses) {
+        return INSTANCE.listenerRegistry.add(listener, events, true, toClassArray(activityClasses));
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     */
+    @NonNull
+    public static Subscription registerActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener, @NonNull AsyncDispatchPolicy policy) {
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), LifecycleEventMask.ALL | LifecycleEventMask.RECREATED, true);
     }
 
     public static void unregisterActivityLifecycleChangedListener(@NonNull OnActivityLifecycleChangedListener listener) {
-        synchronized (LIST_EDIT_LOCK) {
-            LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = INSTANCE.lifecycleChangedListeners;
-            if (lifecycleChangedListeners != null) {
-                lifecycleChangedListeners.remove(listener);
-            }
-        }
+        INSTANCE.listenerRegistry.remove(listener, LifecycleEventMask.ALL | LifecycleEventMask.RECREATED, true);
     }
 
     public static void observeActivityLifecycleChanged(@NonNull LifecycleOwner owner, @NonNull final OnActivityLifecycleChangedListener listener) {
         if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
             throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
-        registerActivityLifecycleChangedListener(listener);
-        owner.getLifecycle().addObserver(new LifecycleChangedAutoUnregisterObserver(listener));
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityLifecycleChangedListener(listener)));
     }
 
+    @NonNull
+    public static Subscription registerActivityLifecycleBatchListener(@NonNull OnActivityLifecycleBatchListener listener) {
+        return registerActivityLifecycleBatchListener(listener, 32, 1000);
+    }
 
-    private static class ActivityLifecycleCallbacksImpl implements Application.ActivityLifecycleCallbacks {
+    /**
+     * Receive all lifecycle events in batches instead of one call per event, a navigation usually ends up in a single batch.
+     * A batch is delivered on the main thread when the main looper goes idle, when it is full or when its oldest event has waited for maxDelayMillis
+     *
+     * @param maxBatchSize   Events that are buffered at most
+     * @param maxDelayMillis How long an event waits at most if the main looper stays busy
+     * @return Disposing it is the same as {@link #unregisterActivityLifecycleBatchListener(OnActivityLifecycleBatchListener)}
+     */
+    @NonNull
+    public static Subscription registerActivityLifecycleBatchListener(@NonNull final OnActivityLifecycleBatchListener listener, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0: " + maxBatchSize);
+        }
+        LifecycleEventBatcher batcher = new LifecycleEventBatcher(listener, INSTANCE.classTable, maxBatchSize, Math.max(maxDelayMillis, 0));
+        synchronized (BATCHERS_LOCK) {
+            LifecycleEventBatcher[] oldBatchers = INSTANCE.batchers;
+            LifecycleEventBatcher[] newBatchers = Arrays.copyOf(oldBatchers, oldBatchers.length + 1);
+            newBatchers[oldBatchers.length] = batcher;
+            INSTANCE.batchers = newBatchers;
+        }
+        return new UnregisterSubscription() {
+            @Override
+            void unregister() {
+                unregisterActivityLifecycleBatchListener(listener);
+            }
+        };
+    }
 
-        @NonNull
-        private final ActivityMonitor monitor;
+    /**
+     * Events not delivered yet are discarded
+     */
+    public static void unregisterActivityLifecycleBatchListener(@NonNull OnActivityLifecycleBatchListener listener) {
+        synchronized (BATCHERS_LOCK) {
+            LifecycleEventBatcher[] oldBatchers = INSTANCE.batchers;
+            for (int i = 0; i < oldBatchers.length; i++) {
+                if (oldBatchers[i].listener == listener) {
+                    oldBatchers[i].cancel();
+                    LifecycleEventBatcher[] newBatchers = new LifecycleEventBatcher[oldBatchers.length - 1];
+                    System.arraycopy(oldBatchers, 0, newBatchers, 0, i);
+                    System.arraycopy(oldBatchers, i + 1, newBatchers, i, newBatchers.length - i);
+                    INSTANCE.batchers = newBatchers;
+                    return;
+                }
+            }
+        }
+    }
 
-        ActivityLifecycleCallbacksImpl(@NonNull ActivityMonitor monitor) {
-            this.monitor = monitor;
+    public static void observeActivityLifecycleBatch(@NonNull LifecycleOwner owner, @NonNull final OnActivityLifecycleBatchListener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityLifecycleBatchListener(listener)));
+    }
 
-        @Override
-        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
-            final int createdCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                monitor.createdActivityReverseList.add(0, new WeakReference<>(activity));
-                createdCount = monitor.createdActivityReverseList.size();
+    /**
+     * One coordinated memory trim signal for all caches. The listener receives every onTrimMemory() and onLowMemory() of the app
+     * together with the number of started and resumed activities and how long the app has been in the background,
+     * so it can decide how much to release without asking the monitor again
+     *
+     * @return Disposing it is the same as {@link #unregisterMemoryTrimListener(OnMemoryTrimListener)}
+     */
+    @NonNull
+    public static Subscription registerMemoryTrimListener(@NonNull final OnMemoryTrimListener listener) {
+        obtainMemoryTrimDispatcher().addListener(listener);
+        return new UnregisterSubscription() {
+            @Override
+            void unregister() {
+                unregisterMemoryTrimListener(listener);
             }
+        };
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityCreatedListener> createdListeners = monitor.createdListeners;
-                if (createdListeners != null && !createdListeners.isEmpty()) {
-                    for (OnActivityCreatedListener listener : createdListeners) {
-                        listener.onActivityCreated(activity, savedInstanceState, createdCount == 1);
-                    }
-                }
+    public static void unregisterMemoryTrimListener(@NonNull OnMemoryTrimListener listener) {
+        obtainMemoryTrimDispatcher().removeListener(listener);
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.CREATED);
-                    }
-                }
-            }
+    public static void observeMemoryTrim(@NonNull LifecycleOwner owner, @NonNull final OnMemoryTrimListener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerMemoryTrimListener(listener)));
+    }
 
-        @Override
-        public void onActivityStarted(Activity activity) {
-            final int startedCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                monitor.startedActivityReverseList.add(0, new WeakReference<>(activity));
-                startedCount = monitor.startedActivityReverseList.size();
-            }
+    /**
+     * Register a listener for several events at once, for example LifecycleEventMask.RESUMED | LifecycleEventMask.PAUSED
+     *
+     * @param listener Must implement the OnActivityXxxListener of every event in the mask
+     * @return Disposing it removes exactly this registration, see {@link CompositeSubscription} to dispose many at once
+     * @throws IllegalArgumentException The listener does not implement the interface of an event in the mask
+     */
+    @NonNull
+    public static Subscription registerActivityListener(@NonNull Object listener, @LifecycleEventMask int events) {
+        checkListenerType(listener, events);
+        return INSTANCE.listenerRegistry.add(listener, events, false);
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityStartedListener> startedListeners = monitor.startedListeners;
-                if (startedListeners != null && !startedListeners.isEmpty()) {
-                    for (OnActivityStartedListener listener : startedListeners) {
-                        listener.onActivityStarted(activity, startedCount == 1);
-                    }
-                }
+    /**
+     * Only the events of activities of the given class or its subclasses are delivered, listeners for other classes cost nothing on dispatch
+     *
+     * @see #registerActivityListener(Object, int)
+     */
+    @NonNull
+    public static Subscription registerActivityListener(@NonNull Object listener, @LifecycleEventMask int events, @NonNull Class<? extends Activity> activityClass) {
+        checkListenerType(listener, events);
+        return INSTANCE.listenerRegistry.add(listener, events, false, new Class<?>[]{activityClass});
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.STARTED);
-                    }
-                }
-            }
+    /**
+     * Only the events of activities of the given classes or their subclasses are delivered, listeners for other classes cost nothing on dispatch
+     *
+     * @see #registerActivityListener(Object, int)
+     */
+    @NonNull
+    public static Subscription registerActivityListener(@NonNull Object listener, @LifecycleEventMask int events,
+                                                @NonNull Collection<Class<? extends Activity>> activityClasses) {
+        checkListenerType(listener, events);
+        return INSTANCE.listenerRegistry.add(listener, events, false, toClassArray(activityClasses));
+    }
+
+    /**
+     * The listener is called on the executor of the policy instead of the main thread, the events are still delivered in order
+     *
+     * @see #registerActivityListener(Object, int)
+     */
+    @NonNull
+    public static Subscription registerActivityListener(@NonNull Object listener, @LifecycleEventMask int events, @NonNull AsyncDispatchPolicy policy) {
+        checkListenerType(listener, events);
+        return INSTANCE.listenerRegistry.add(new AsyncListener(listener, policy), events, false);
+    }
+
+    public static void unregisterActivityListener(@NonNull Object listener, @LifecycleEventMask int events) {
+        INSTANCE.listenerRegistry.remove(listener, events, false);
+    }
+
+    public static void unregisterActivityListener(@NonNull Object listener) {
+        unregisterActivityListener(listener, LifecycleEventMask.ALL | LifecycleEventMask.RECREATED);
+    }
+
+    public static void observeActivityListener(@NonNull LifecycleOwner owner, @NonNull Object listener, @LifecycleEventMask int events) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerActivityListener(listener, events)));
+    }
 
-        @Override
-        public void onActivityResumed(Activity activity) {
-            final int resumedCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                monitor.resumedActivityReverseList.add(0, new WeakReference<>(activity));
-                resumedCount = monitor.resumedActivityReverseList.size();
+    /**
+     * The listener is called on the main thread, only for settled transitions
+     *
+     * @return Disposing it is the same as {@link #unregisterAppVisibilityChangedListener(OnAppVisibilityChangedListener)}
+     * @see #isAppForeground()
+     */
+    @NonNull
+    public static Subscription registerAppVisibilityChangedListener(@NonNull final OnAppVisibilityChangedListener listener) {
+        INSTANCE.foregroundStateMachine.addListener(listener);
+        return new UnregisterSubscription() {
+            @Override
+            void unregister() {
+                unregisterAppVisibilityChangedListener(listener);
             }
+        };
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityResumedListener> resumedListeners = monitor.resumedListeners;
-                if (resumedListeners != null && !resumedListeners.isEmpty()) {
-                    for (OnActivityResumedListener listener : resumedListeners) {
-                        listener.onActivityResumed(activity, resumedCount == 1);
-                    }
-                }
+    public static void unregisterAppVisibilityChangedListener(@NonNull OnAppVisibilityChangedListener listener) {
+        INSTANCE.foregroundStateMachine.removeListener(listener);
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.RESUMED);
-                    }
-                }
-            }
+    public static void observeAppVisibilityChanged(@NonNull LifecycleOwner owner, @NonNull final OnAppVisibilityChangedListener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
         }
+        owner.getLifecycle().addObserver(new SubscriptionAutoDisposeObserver(registerAppVisibilityChangedListener(listener)));
+    }
 
-        @Override
-        public void onActivityPaused(Activity activity) {
-            final int resumedCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                Iterator<WeakReference<Activity>> iterator = monitor.resumedActivityReverseList.iterator();
-                while (iterator.hasNext()) {
-                    WeakReference<Activity> activityWeakReference = iterator.next();
-                    Activity cacheActivity = activityWeakReference.get();
-                    if (cacheActivity == null || cacheActivity == activity) {
-                        iterator.remove();
-                    }
-                }
+    @NonNull
+    private static Class<?>[] toClassArray(@NonNull Collection<Class<? extends Activity>> activityClasses) {
+        if (activityClasses.isEmpty()) {
+            throw new IllegalArgumentException("activityClasses is empty");
+        }
+        return activityClasses.toArray(new Class<?>[0]);
+    }
 
-                resumedCount = monitor.resumedActivityReverseList.size();
-            }
+    private static void checkListenerType(@NonNull Object listener, @LifecycleEventMask int events) {
+        checkListenerType(listener, events, LifecycleEventMask.CREATED, OnActivityCreatedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.STARTED, OnActivityStartedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.RESUMED, OnActivityResumedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.PAUSED, OnActivityPausedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.STOPPED, OnActivityStoppedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.SAVE_INSTANCE_STATE, OnActivitySaveInstanceStateListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.DESTROYED, OnActivityDestroyedListener.class);
+        checkListenerType(listener, events, LifecycleEventMask.RECREATED, OnActivityRecreatedListener.class);
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityPausedListener> pausedListeners = monitor.pausedListeners;
-                if (pausedListeners != null && !pausedListeners.isEmpty()) {
-                    for (OnActivityPausedListener listener : pausedListeners) {
-                        listener.onActivityPaused(activity, resumedCount <= 0);
-                    }
-                }
+    private static void checkListenerType(@NonNull Object listener, @LifecycleEventMask int events, @LifecycleEventMask int event, @NonNull Class<?> listenerType) {
+        if ((events & event) != 0 && !listenerType.isInstance(listener)) {
+            throw new IllegalArgumentException(listener.getClass().getName() + " does not implement " + listenerType.getSimpleName());
+        }
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.PAUSED);
-                    }
-                }
+
+    /**
+     * Start recording how long each listener takes to handle each lifecycle event, the records can be read through {@link #getListenerStats()}.
+     * Calling it again discards the previous records
+     *
+     * @param budgetNanos          A listener that takes longer than this is reported to slowDispatchListener, 0 means no budget
+     * @param slowDispatchListener Called on the main thread right after the slow listener returns
+     */
+    public static void enableDispatchProfiling(long budgetNanos, @Nullable OnSlowDispatchListener slowDispatchListener) {
+        INSTANCE.profiler = new DispatchProfiler(budgetNanos, slowDispatchListener);
+    }
+
+    public static void disableDispatchProfiling() {
+        INSTANCE.profiler = null;
+    }
+
+    /**
+     * @return Stats of the currently registered listeners that were dispatched to since profiling was enabled, empty list if dispatch profiling is not enabled
+     */
+    @NonNull
+    public static List<ListenerStats> getListenerStats() {
+        DispatchProfiler profiler = INSTANCE.profiler;
+        return profiler != null ? profiler.getStats(INSTANCE.listenerRegistry.getEntries()) : new ArrayList<ListenerStats>(0);
+    }
+
+    /**
+     * Get the screen time of the specified Activity
+     *
+     * @return null: The Activity is not being monitored
+     */
+    @Nullable
+    public static ActivityTiming getActivityTiming(@NonNull Activity activity) {
+        ActivityRecord record;
+        synchronized (RECORD_INDEX_LOCK) {
+            record = INSTANCE.recordIndex.find(activity);
+        }
+        return record != null ? record.timing.at(ElapsedClock.nanos()) : null;
+    }
+
+    /**
+     * Get the accumulated screen time of every Activity class that has been monitored, in the order the classes were first seen
+     */
+    @NonNull
+    public static List<ActivityClassTiming> getActivityClassTimings() {
+        SparseArray<ActivityClassTimingAccumulator> classTimings = INSTANCE.classTimings;
+        synchronized (classTimings) {
+            List<ActivityClassTiming> list = new ArrayList<>(classTimings.size());
+            for (int i = 0, size = classTimings.size(); i < size; i++) {
+                list.add(classTimings.valueAt(i).getTiming());
             }
+            return list;
         }
+    }
 
-        @Override
-        public void onActivityStopped(Activity activity) {
-            final int startedCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                Iterator<WeakReference<Activity>> iterator = monitor.startedActivityReverseList.iterator();
-                while (iterator.hasNext()) {
-                    WeakReference<Activity> activityWeakReference = iterator.next();
-                    Activity cacheActivity = activityWeakReference.get();
-                    if (cacheActivity == null || cacheActivity == activity) {
-                        iterator.remove();
-                    }
-                }
+    /**
+     * Start recording every lifecycle event into a fixed size ring buffer, once full the oldest events are overwritten.
+     * Recording does not allocate, so it can stay on in production builds. Calling it again discards the previous events
+     *
+     * @param capacity How many of the latest events to keep, rounded up to a power of two, at most 2^30
+     * @throws IllegalArgumentException capacity is not in 1..2^30
+     */
+    public static void enableEventRecording(int capacity) {
+        if (capacity <= 0 || capacity > LifecycleEventRecorder.MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be in 1.." + LifecycleEventRecorder.MAX_CAPACITY + ": " + capacity);
+        }
+        INSTANCE.eventRecorder = new LifecycleEventRecorder(capacity);
+    }
 
-                startedCount = monitor.startedActivityReverseList.size();
-            }
+    public static void disableEventRecording() {
+        INSTANCE.eventRecorder = null;
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityStoppedListener> stoppedListeners = monitor.stoppedListeners;
-                if (stoppedListeners != null && !stoppedListeners.isEmpty()) {
-                    for (OnActivityStoppedListener listener : stoppedListeners) {
-                        listener.onActivityStopped(activity, startedCount <= 0);
-                    }
-                }
+    /**
+     * Copy the recorded events without blocking the main thread, can be called from any thread
+     *
+     * @return Empty log if event recording is not enabled
+     */
+    @NonNull
+    public static LifecycleEventLog getRecordedEvents() {
+        LifecycleEventRecorder eventRecorder = INSTANCE.eventRecorder;
+        return eventRecorder != null ? eventRecorder.snapshot(INSTANCE.classTable) : LifecycleEventLog.EMPTY;
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.STOPPED);
-                    }
-                }
-            }
+    /**
+     * Mirror every lifecycle event and the current stack summary into a memory mapped file, so that the next launch can find out
+     * what the app was doing when the process died, even after a native crash or being killed. Nothing is flushed on the main thread,
+     * the kernel writes the pages back. Read the previous session with {@link FlightRecording#read(File)} before calling this,
+     * the file is reset here
+     *
+     * @param capacity How many of the latest events to keep in the file
+     */
+    public static void enableFlightRecorder(@NonNull File file, int capacity) throws IOException {
+        if (capacity <= 1 || capacity > FlightRecorderFormat.MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be in 2.." + FlightRecorderFormat.MAX_CAPACITY + ": " + capacity);
         }
+        INSTANCE.flightRecorder = new FlightRecorder(file, capacity);
+    }
 
-        @Override
-        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivitySaveInstanceStateListener> saveInstanceStateListeners = monitor.saveInstanceStateListeners;
-                if (saveInstanceStateListeners != null && !saveInstanceStateListeners.isEmpty()) {
-                    for (OnActivitySaveInstanceStateListener listener : saveInstanceStateListeners) {
-                        listener.onActivitySaveInstanceState(activity, outState);
-                    }
-                }
+    public static void disableFlightRecorder() {
+        INSTANCE.flightRecorder = null;
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.SAVE_INSTANCE_STATE);
-                    }
-                }
-            }
+    /**
+     * Publish the activity counts of this process into a small memory mapped file shared by all processes of the app,
+     * so that any process can tell whether the app is in the foreground without IPC, see {@link #isAppForegroundInAnyProcess()}.
+     * Call it with the same file in every process, usually in Application.onCreate(). Must be called on the main thread
+     *
+     * @throws IOException The file can not be mapped or all slots are taken by live processes
+     */
+    public static void enableSharedState(@NonNull File file) throws IOException {
+        if (INSTANCE.sharedStatePublisher != null) {
+            return;
         }
+        SharedStatePublisher publisher = new SharedStatePublisher(
+                new SharedStateWriter(file, Process.myPid(), SharedStatePublisher.DEFAULT_HEARTBEAT_INTERVAL_MILLIS));
+        MonitorState state = INSTANCE.state;
+        publisher.publish(state.getCreatedActivityCount(), state.getStartedActivityCount(), state.getResumedActivityCount());
+        INSTANCE.sharedStatePublisher = publisher;
+    }
 
-        @Override
-        public void onActivityDestroyed(Activity activity) {
-            final int createdCount;
-            synchronized (COUNT_EDIT_LOCK) {
-                Iterator<WeakReference<Activity>> iterator = monitor.createdActivityReverseList.iterator();
-                while (iterator.hasNext()) {
-                    WeakReference<Activity> activityWeakReference = iterator.next();
-                    Activity cacheActivity = activityWeakReference.get();
-                    if (cacheActivity == null || cacheActivity == activity) {
-                        iterator.remove();
-                    }
-                }
+    /**
+     * Must be called on the main thread
+     */
+    public static void disableSharedState() throws IOException {
+        SharedStatePublisher publisher = INSTANCE.sharedStatePublisher;
+        if (publisher != null) {
+            INSTANCE.sharedStatePublisher = null;
+            publisher.stop();
+            publisher.writer.close();
+        }
+    }
 
-                createdCount = monitor.createdActivityReverseList.size();
+    /**
+     * @return true: An Activity is started in this process or in another live process of the app that enabled the shared state.
+     * Same as {@link #isRunningForeground()} if the shared state is not enabled
+     * @see #enableSharedState(File)
+     */
+    public static boolean isAppForegroundInAnyProcess() {
+        SharedStatePublisher publisher = INSTANCE.sharedStatePublisher;
+        return publisher != null ? publisher.reader.isAppForeground(SharedStatePublisher.nowMillis()) : INSTANCE.state.isRunningForeground();
+    }
+
+    /**
+     * Watch destroyed activities and report the ones that are still reachable after the delay and a GC hint.
+     * Memory is bounded by maxWatched, when more activities are destroyed in the delay the oldest ones are no longer watched.
+     * Does not dump the heap, use a heap dump tool to find out what holds a reported Activity. Calling it again starts over
+     *
+     * @param delayMillis How long a destroyed Activity may stay reachable, for example 5000
+     * @param maxWatched  How many destroyed activities are watched at most
+     * @param listener    Called on the main thread when retained activities are found
+     */
+    public static void enableLeakDetection(long delayMillis, int maxWatched, @Nullable OnActivityLeakListener listener) {
+        if (maxWatched <= 0) {
+            throw new IllegalArgumentException("maxWatched must be greater than 0: " + maxWatched);
+        }
+        LeakWatcher oldLeakWatcher = INSTANCE.leakWatcher;
+        INSTANCE.leakWatcher = new LeakWatcher(INSTANCE.classTable, Math.max(delayMillis, 0), maxWatched, listener);
+        if (oldLeakWatcher != null) {
+            oldLeakWatcher.stop();
+        }
+    }
+
+    public static void disableLeakDetection() {
+        LeakWatcher leakWatcher = INSTANCE.leakWatcher;
+        INSTANCE.leakWatcher = null;
+        if (leakWatcher != null) {
+            leakWatcher.stop();
+        }
+    }
+
+    /**
+     * @return Empty list if leak detection is not enabled or nothing is retained
+     */
+    @NonNull
+    public static List<RetainedActivities> getRetainedActivities() {
+        LeakWatcher leakWatcher = INSTANCE.leakWatcher;
+        return leakWatcher != null ? leakWatcher.getRetained() : new ArrayList<RetainedActivities>(0);
+    }
+
+    /**
+     * Each Activity has only one record, it is created on the first callback and shared by the three stacks
+     */
+    @NonNull
+    private ActivityRecord obtainRecord(@NonNull Activity activity) {
+        ActivityRecord record = recordIndex.find(activity);
+        if (record == null) {
+            int classIndex = classTable.indexOf(activity.getClass());
+            record = new ActivityRecord(++lastActivityId, activity, classIndex, obtainClassTiming(classIndex, activity),
+                    obtainClassBucket(activity), referenceQueue);
+            synchronized (RECORD_INDEX_LOCK) {
+                recordIndex.add(record);
             }
+        }
+        return record;
+    }
 
-            synchronized (LIST_EDIT_LOCK) {
-                LinkedList<OnActivityDestroyedListener> destroyedListeners = monitor.destroyedListeners;
-                if (destroyedListeners != null && !destroyedListeners.isEmpty()) {
-                    for (OnActivityDestroyedListener listener : destroyedListeners) {
-                        listener.onActivityDestroyed(activity, createdCount <= 0);
-                    }
-                }
+    @NonNull
+    private ActivityClassTimingAccumulator obtainClassTiming(int classIndex, @NonNull Activity activity) {
+        synchronized (classTimings) {
+            ActivityClassTimingAccumulator classTiming = classTimings.get(classIndex);
+            if (classTiming == null) {
+                classTiming = new ActivityClassTimingAccumulator(activity.getClass().getName());
+                classTimings.put(classIndex, classTiming);
+            }
+            return classTiming;
+        }
+    }
 
-                LinkedList<OnActivityLifecycleChangedListener> lifecycleChangedListeners = monitor.lifecycleChangedListeners;
-                if (lifecycleChangedListeners != null && !lifecycleChangedListeners.isEmpty()) {
-                    for (OnActivityLifecycleChangedListener listener : lifecycleChangedListeners) {
-                        listener.onActivityLifecycleChanged(activity, LifecycleEvent.DESTROYED);
+    @NonNull
+    private ActivityClassBucket obtainClassBucket(@NonNull Activity activity) {
+        ActivityClassBucket classBucket = classBuckets.get(activity.getClass());
+        if (classBucket == null) {
+            classBucket = new ActivityClassBucket();
+            classBuckets.put(activity.getClass(), classBucket);
+        }
+        return classBucket;
+    }
+
+    /**
+     * Remove the records whose Activity has been collected without being destroyed, each in O(1), nothing is dispatched for them.
+     * Called at the start of every callback, polling an empty queue is cheap.
+     * If that empties the started stack the app goes to the background just as if the last Activity had stopped
+     */
+    private void purgeCollectedRecords(long now) {
+        Reference<? extends Activity> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            ActivityRecord record = ((ActivityRecord.Reference) reference).record;
+            // Replaced by recreation, already released, or waiting for its recreated instance
+            if (record.reference != reference || record.flags == 0 || record == recreatingRecord) {
+                continue;
+            }
+            int flags = record.flags;
+            createdActivityStack.remove(record);
+            startedActivityStack.remove(record);
+            resumedActivityStack.remove(record);
+            record.classBucket.remove(record);
+            releaseRecordIfUnused(record);
+            if ((flags & ActivityRecord.FLAG_CREATED) != 0) {
+                publishState(createdActivityStack);
+            }
+            if ((flags & ActivityRecord.FLAG_STARTED) != 0) {
+                publishState(startedActivityStack);
+                if (startedActivityStack.size() <= 0) {
+                    foregroundStateMachine.onLastStopped(false);
+                    MemoryTrimDispatcher memoryTrimDispatcher = this.memoryTrimDispatcher;
+                    if (memoryTrimDispatcher != null) {
+                        memoryTrimDispatcher.onLastStopped(now);
                     }
                 }
             }
+            if ((flags & ActivityRecord.FLAG_RESUMED) != 0) {
+                publishState(resumedActivityStack);
+            }
         }
     }
 
-    private static class CreatedAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivityCreatedListener listener;
-
-        CreatedAutoUnregisterObserver(@NonNull OnActivityCreatedListener listener) {
-            this.listener = listener;
+    private void releaseRecordIfUnused(@NonNull ActivityRecord record) {
+        if (record.flags == 0) {
+            synchronized (RECORD_INDEX_LOCK) {
+                recordIndex.remove(record);
+            }
         }
+    }
 
-        @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityCreatedListener(listener);
-                source.getLifecycle().removeObserver(this);
-            }
+    /**
+     * Only the stack that has changed is copied, the others are shared with the previous state
+     */
+    private void publishState(@NonNull ActivityStack changedStack) {
+        int flag = changedStack.flag();
+        publishState(flag == ActivityRecord.FLAG_CREATED, flag == ActivityRecord.FLAG_STARTED, flag == ActivityRecord.FLAG_RESUMED);
+    }
+
+    private void publishState(boolean createdChanged, boolean startedChanged, boolean resumedChanged) {
+        MonitorState oldState = state;
+        ActivityRecord lastResumed = resumedActivityStack.top();
+        int startedCount = startedActivityStack.size();
+        boolean versionChanged = startedCount != oldState.getStartedActivityCount()
+                || (lastResumed != null ? lastResumed.id : -1) != oldState.getLastResumedActivityId();
+        state = new MonitorState(
+                versionChanged ? oldState.getVersion() + 1 : oldState.getVersion(),
+                createdChanged ? createdActivityStack.toReferenceArray() : oldState.createdReferences,
+                startedChanged ? startedActivityStack.toReferenceArray() : oldState.startedReferences,
+                resumedChanged ? resumedActivityStack.toReferenceArray() : oldState.resumedReferences
+        );
+        stateNotifier.onStatePublished();
+        SharedStatePublisher sharedStatePublisher = this.sharedStatePublisher;
+        if (sharedStatePublisher != null) {
+            sharedStatePublisher.publish(createdActivityStack.size(), startedActivityStack.size(), resumedActivityStack.size());
         }
     }
 
-    private static class StartedAutoUnregisterObserver implements LifecycleEventObserver {
+    private static class ActivityLifecycleCallbacksImpl implements Application.ActivityLifecycleCallbacks {
+
         @NonNull
-        private final OnActivityStartedListener listener;
+        private final ActivityMonitor monitor;
 
-        StartedAutoUnregisterObserver(@NonNull OnActivityStartedListener listener) {
-            this.listener = listener;
+        ActivityLifecycleCallbacksImpl(@NonNull ActivityMonitor monitor) {
+            this.monitor = monitor;
         }
 
         @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityStartedListener(listener);
-                source.getLifecycle().removeObserver(this);
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            ActivityRecord recreatingRecord = monitor.recreatingRecord;
+            if (recreatingRecord != null) {
+                monitor.recreatingRecord = null;
+                if (recreatingRecord.classIndex == monitor.classTable.indexOf(activity.getClass()) && monitor.recordIndex.find(activity) == null) {
+                    synchronized (RECORD_INDEX_LOCK) {
+                        monitor.recordIndex.remove(recreatingRecord);
+                        recreatingRecord.attach(activity, monitor.referenceQueue);
+                        monitor.recordIndex.add(recreatingRecord);
+                    }
+                    // The record has a new reference, every stack that contains it must be copied again
+                    monitor.publishState(true, true, true);
+
+                    dispatch(LifecycleEvent.RECREATED, activity, recreatingRecord, now, savedInstanceState, false);
+                    return;
+                }
+                destroy(recreatingRecord, recreatingRecord.reference.get(), now);
             }
-        }
-    }
 
-    private static class ResumedAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivityResumedListener listener;
+            ActivityRecord record = monitor.obtainRecord(activity);
+            if (record.createdTimeNanos == 0) {
+                record.createdTimeNanos = now;
+                record.publishTiming();
+                record.classTiming.addCreated();
+            }
+            monitor.createdActivityStack.push(record);
+            record.classBucket.push(record);
+            final int createdCount = monitor.createdActivityStack.size();
+            monitor.publishState(monitor.createdActivityStack);
 
-        ResumedAutoUnregisterObserver(@NonNull OnActivityResumedListener listener) {
-            this.listener = listener;
+            dispatch(LifecycleEvent.CREATED, activity, record, now, savedInstanceState, createdCount == 1);
         }
 
         @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityResumedListener(listener);
-                source.getLifecycle().removeObserver(this);
+        public void onActivityStarted(Activity activity) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            ActivityRecord record = monitor.obtainRecord(activity);
+            if (!monitor.startedActivityStack.contains(record)) {
+                if (record.firstStartedTimeNanos == 0) {
+                    record.firstStartedTimeNanos = now;
+                }
+                record.startedSinceNanos = now;
+                record.publishTiming();
+            }
+            monitor.startedActivityStack.push(record);
+            final int startedCount = monitor.startedActivityStack.size();
+            monitor.publishState(monitor.startedActivityStack);
+
+            dispatch(LifecycleEvent.STARTED, activity, record, now, null, startedCount == 1);
+            if (startedCount == 1) {
+                monitor.foregroundStateMachine.onFirstStarted();
+                MemoryTrimDispatcher memoryTrimDispatcher = monitor.memoryTrimDispatcher;
+                if (memoryTrimDispatcher != null) {
+                    memoryTrimDispatcher.onFirstStarted();
+                }
             }
         }
-    }
 
-    private static class PausedAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivityPausedListener listener;
+        @Override
+        public void onActivityResumed(Activity activity) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            ActivityRecord record = monitor.obtainRecord(activity);
+            if (!monitor.resumedActivityStack.contains(record)) {
+                if (record.firstResumedTimeNanos == 0) {
+                    record.firstResumedTimeNanos = now;
+                    if (record.createdTimeNanos != 0) {
+                        record.classTiming.addTimeToFirstResume(now - record.createdTimeNanos);
+                    }
+                }
+                record.resumedSinceNanos = now;
+                record.publishTiming();
+            }
+            monitor.resumedActivityStack.push(record);
+            final int resumedCount = monitor.resumedActivityStack.size();
+            monitor.publishState(monitor.resumedActivityStack);
 
-        PausedAutoUnregisterObserver(@NonNull OnActivityPausedListener listener) {
-            this.listener = listener;
+            dispatch(LifecycleEvent.RESUMED, activity, record, now, null, resumedCount == 1);
         }
 
         @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityPausedListener(listener);
-                source.getLifecycle().removeObserver(this);
+        public void onActivityPaused(Activity activity) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            ActivityRecord record = monitor.recordIndex.find(activity);
+            if (record != null) {
+                if (monitor.resumedActivityStack.contains(record)) {
+                    long resumedNanos = now - record.resumedSinceNanos;
+                    record.totalResumedNanos += resumedNanos;
+                    record.resumedSinceNanos = 0;
+                    record.publishTiming();
+                    record.classTiming.addResumed(resumedNanos);
+                }
+                monitor.resumedActivityStack.remove(record);
+                monitor.releaseRecordIfUnused(record);
             }
+            final int resumedCount = monitor.resumedActivityStack.size();
+            monitor.publishState(monitor.resumedActivityStack);
+
+            dispatch(LifecycleEvent.PAUSED, activity, record, now, null, resumedCount <= 0);
         }
-    }
 
-    private static class StoppedAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivityStoppedListener listener;
+        @Override
+        public void onActivityStopped(Activity activity) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            ActivityRecord record = monitor.recordIndex.find(activity);
+            if (record != null) {
+                if (monitor.startedActivityStack.contains(record)) {
+                    long startedNanos = now - record.startedSinceNanos;
+                    record.totalStartedNanos += startedNanos;
+                    record.startedSinceNanos = 0;
+                    record.publishTiming();
+                    record.classTiming.addStarted(startedNanos);
+                }
+                monitor.startedActivityStack.remove(record);
+                monitor.releaseRecordIfUnused(record);
+            }
+            final int startedCount = monitor.startedActivityStack.size();
+            monitor.publishState(monitor.startedActivityStack);
+
+            dispatch(LifecycleEvent.STOPPED, activity, record, now, null, startedCount <= 0);
+            if (startedCount <= 0) {
+                monitor.foregroundStateMachine.onLastStopped(activity.isChangingConfigurations());
+                MemoryTrimDispatcher memoryTrimDispatcher = monitor.memoryTrimDispatcher;
+                if (memoryTrimDispatcher != null) {
+                    memoryTrimDispatcher.onLastStopped(now);
+                }
+            }
+        }
 
-        StoppedAutoUnregisterObserver(@NonNull OnActivityStoppedListener listener) {
-            this.listener = listener;
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            dispatch(LifecycleEvent.SAVE_INSTANCE_STATE, activity, monitor.recordIndex.find(activity), now, outState, false);
         }
 
         @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityStoppedListener(listener);
-                source.getLifecycle().removeObserver(this);
+        public void onActivityDestroyed(Activity activity) {
+            final long now = ElapsedClock.nanos();
+            monitor.purgeCollectedRecords(now);
+            finishRecreation(now);
+            ActivityRecord record = monitor.recordIndex.find(activity);
+            LeakWatcher leakWatcher = monitor.leakWatcher;
+            if (leakWatcher != null) {
+                leakWatcher.watch(activity, record != null ? record.classIndex : monitor.classTable.indexOf(activity.getClass()));
+            }
+            if (record != null && monitor.recreationTracking && activity.isChangingConfigurations()
+                    && monitor.createdActivityStack.contains(record)) {
+                monitor.recreatingRecord = record;
+                return;
             }
+            destroy(record, activity, now);
         }
-    }
 
-    private static class DestroyedAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivityDestroyedListener listener;
+        /**
+         * The new instance was not created right after the old one was destroyed, deliver the DESTROYED that was held back
+         */
+        private void finishRecreation(long now) {
+            ActivityRecord recreatingRecord = monitor.recreatingRecord;
+            if (recreatingRecord != null) {
+                monitor.recreatingRecord = null;
+                destroy(recreatingRecord, recreatingRecord.reference.get(), now);
+            }
+        }
 
-        DestroyedAutoUnregisterObserver(@NonNull OnActivityDestroyedListener listener) {
-            this.listener = listener;
+        private void destroy(@Nullable ActivityRecord record, @Nullable Activity activity, long now) {
+            if (record != null) {
+                monitor.createdActivityStack.remove(record);
+                record.classBucket.remove(record);
+                monitor.releaseRecordIfUnused(record);
+            }
+            final int createdCount = monitor.createdActivityStack.size();
+            monitor.publishState(monitor.createdActivityStack);
+
+            if (activity != null) {
+                dispatch(LifecycleEvent.DESTROYED, activity, record, now, null, createdCount <= 0);
+            }
         }
 
-        @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityDestroyedListener(listener);
-                source.getLifecycle().removeObserver(this);
+        private void dispatch(@LifecycleEvent int event, @NonNull Activity activity, @Nullable ActivityRecord record, long now,
+                              @Nullable Bundle bundle, boolean flag) {
+            LifecycleEventRecorder eventRecorder = monitor.eventRecorder;
+            FlightRecorder flightRecorder = monitor.flightRecorder;
+            LifecycleEventBatcher[] batchers = monitor.batchers;
+            if (eventRecorder != null || flightRecorder != null || batchers.length > 0) {
+                int activityId = record != null ? record.id : -1;
+                int classIndex = record != null ? record.classIndex : monitor.classTable.indexOf(activity.getClass());
+                if (eventRecorder != null) {
+                    eventRecorder.record(activityId, classIndex, event, now);
+                }
+                if (flightRecorder != null) {
+                    flightRecorder.record(monitor.classTable, activityId, classIndex, event, now,
+                            monitor.createdActivityStack.size(), monitor.startedActivityStack.size(), monitor.resumedActivityStack.size(),
+                            monitor.createdActivityStack.top(), monitor.resumedActivityStack.top());
+                }
+                for (LifecycleEventBatcher batcher : batchers) {
+                    batcher.add(activityId, classIndex, event, now);
+                }
+            }
+
+            DispatchProfiler profiler = monitor.profiler;
+            ListenerEntry[] entries = monitor.listenerRegistry.get(event, activity.getClass());
+            for (int i = 0, size = entries.length; i < size; i++) {
+                ListenerEntry entry = entries[i];
+                long startTime = profiler != null ? System.nanoTime() : 0;
+                if (entry.lifecycleChanged) {
+                    ((OnActivityLifecycleChangedListener) entry.listener).onActivityLifecycleChanged(activity, event);
+                } else {
+                    dispatchTo(entry.listener, event, activity, bundle, flag);
+                }
+                if (profiler != null) {
+                    profiler.record(entry, event, System.nanoTime() - startTime);
+                }
+            }
+        }
+
+        private static void dispatchTo(@NonNull Object listener, @LifecycleEvent int event, @NonNull Activity activity, @Nullable Bundle bundle, boolean flag) {
+            switch (event) {
+                case LifecycleEvent.CREATED:
+                    ((OnActivityCreatedListener) listener).onActivityCreated(activity, bundle, flag);
+                    break;
+                case LifecycleEvent.STARTED:
+                    ((OnActivityStartedListener) listener).onActivityStarted(activity, flag);
+                    break;
+                case LifecycleEvent.RESUMED:
+                    ((OnActivityResumedListener) listener).onActivityResumed(activity, flag);
+                    break;
+                case LifecycleEvent.PAUSED:
+                    ((OnActivityPausedListener) listener).onActivityPaused(activity, flag);
+                    break;
+                case LifecycleEvent.STOPPED:
+                    ((OnActivityStoppedListener) listener).onActivityStopped(activity, flag);
+                    break;
+                case LifecycleEvent.SAVE_INSTANCE_STATE:
+                    //noinspection ConstantConditions
+                    ((OnActivitySaveInstanceStateListener) listener).onActivitySaveInstanceState(activity, bundle);
+                    break;
+                case LifecycleEvent.DESTROYED:
+                    ((OnActivityDestroyedListener) listener).onActivityDestroyed(activity, flag);
+                    break;
+                case LifecycleEvent.RECREATED:
+                    ((OnActivityRecreatedListener) listener).onActivityRecreated(activity, bundle);
+                    break;
             }
         }
     }
 
-    private static class SaveInstanceStateAutoUnregisterObserver implements LifecycleEventObserver {
-        @NonNull
-        private final OnActivitySaveInstanceStateListener listener;
+    /**
+     * For the listeners that are not kept in the {@link ListenerRegistry}, disposing calls the unregister method once.
+     * Unregistering the listener directly does not mark it disposed
+     */
+    private abstract static class UnregisterSubscription implements Subscription {
 
-        SaveInstanceStateAutoUnregisterObserver(@NonNull OnActivitySaveInstanceStateListener listener) {
-            this.listener = listener;
-        }
+        private boolean disposed;
+
+        abstract void unregister();
 
         @Override
-        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-            if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivitySaveInstanceStateListener(listener);
-                source.getLifecycle().removeObserver(this);
+        public void dispose() {
+            synchronized (this) {
+                if (disposed) {
+                    return;
+                }
+                disposed = true;
             }
+            unregister();
+        }
+
+        @Override
+        public synchronized boolean isDisposed() {
+            return disposed;
         }
     }
 
-    private static class LifecycleChangedAutoUnregisterObserver implements LifecycleEventObserver {
+    private static class SubscriptionAutoDisposeObserver implements LifecycleEventObserver {
         @NonNull
-        private final OnActivityLifecycleChangedListener listener;
+        private final Subscription subscription;
 
-        LifecycleChangedAutoUnregisterObserver(@NonNull OnActivityLifecycleChangedListener listener) {
-            this.listener = listener;
+        SubscriptionAutoDisposeObserver(@NonNull Subscription subscription) {
+            this.subscription = subscription;
         }
 
         @Override
         public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
             if (event == Lifecycle.Event.ON_DESTROY) {
-                unregisterActivityLifecycleChangedListener(listener);
+                subscription.dispose();
                 source.getLifecycle().removeObserver(this);
             }
         }
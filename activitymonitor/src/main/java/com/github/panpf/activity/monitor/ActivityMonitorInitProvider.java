@@ -23,13 +23,18 @@ import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 
+/**
+ * Installs {@link ActivityMonitor} before Application.onCreate(). To save the cost of this provider at startup, disable it with
+ * {@code <bool name="activity_monitor_init_provider_enabled">false</bool>} and use {@link ActivityMonitor#install(Application)}
+ * or {@link ActivityMonitorInitializer} instead
+ */
 public class ActivityMonitorInitProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
         Context context = getContext();
         if (context != null) {
-            ActivityMonitor.init((Application) context.getApplicationContext());
+            ActivityMonitor.install((Application) context.getApplicationContext());
             return true;
         } else {
             return false;
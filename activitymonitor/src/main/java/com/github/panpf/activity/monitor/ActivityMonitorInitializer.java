@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.startup.Initializer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Installs {@link ActivityMonitor} through the androidx.startup InitializationProvider, so that it shares one provider
+ * with the other libraries of the app. The app must depend on androidx.startup:startup-runtime, disable
+ * {@link ActivityMonitorInitProvider} and declare this initializer:
+ * <pre>
+ * &lt;provider
+ *     android:name="androidx.startup.InitializationProvider"
+ *     android:authorities="${applicationId}.androidx-startup"
+ *     android:exported="false"
+ *     tools:node="merge"&gt;
+ *     &lt;meta-data
+ *         android:name="com.github.panpf.activity.monitor.ActivityMonitorInitializer"
+ *         android:value="androidx.startup" /&gt;
+ * &lt;/provider&gt;
+ * </pre>
+ */
+public class ActivityMonitorInitializer implements Initializer<Void> {
+
+    @Override
+    public Void create(@NonNull Context context) {
+        ActivityMonitor.install((Application) context.getApplicationContext());
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer<?>>> dependencies() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Bookkeeping of a single Activity, created once when the Activity is created and shared by all three {@link ActivityStack}.
+ * The links are intrusive so that the record can be unlinked from any stack in O(1)
+ */
+final class ActivityRecord {
+
+    static final int FLAG_CREATED = 1;
+    static final int FLAG_STARTED = 1 << 1;
+    static final int FLAG_RESUMED = 1 << 2;
+    /**
+     * The record is in the stack of its {@link ActivityClassBucket}
+     */
+    static final int FLAG_CLASS = 1 << 3;
+
+    final int id;
+    /**
+     * Changes together with the reference when the record is moved to the recreated Activity, must hold the index lock
+     */
+    int identityHash;
+    /**
+     * Index of the Activity class in {@link ActivityClassTable}
+     */
+    final int classIndex;
+    @NonNull
+    final ActivityClassTimingAccumulator classTiming;
+    @NonNull
+    final ActivityClassBucket classBucket;
+    /**
+     * Replaced, never changed, when the record moves to a recreated Activity, so {@link MonitorState} can keep the old one
+     */
+    @NonNull
+    volatile Reference reference;
+
+    /*
+     * Screen time, only accessed by the main thread, 0 means not reached yet. The *Since fields are the start of the current period.
+     * Other threads read the copy in timing
+     */
+    long createdTimeNanos;
+    long firstStartedTimeNanos;
+    long firstResumedTimeNanos;
+    long startedSinceNanos;
+    long resumedSinceNanos;
+    long totalStartedNanos;
+    long totalResumedNanos;
+
+    /**
+     * Immutable copy of the screen time, published by {@link #publishTiming()}
+     */
+    @NonNull
+    volatile ActivityTiming timing;
+
+    /**
+     * Which stacks currently contain this record, a combination of the FLAG_* constants
+     */
+    int flags;
+
+    @Nullable
+    ActivityRecord createdAbove;
+    @Nullable
+    ActivityRecord createdBelow;
+    @Nullable
+    ActivityRecord startedAbove;
+    @Nullable
+    ActivityRecord startedBelow;
+    @Nullable
+    ActivityRecord resumedAbove;
+    @Nullable
+    ActivityRecord resumedBelow;
+    @Nullable
+    ActivityRecord classAbove;
+    @Nullable
+    ActivityRecord classBelow;
+
+    /**
+     * Next record in the same bucket of {@link ActivityRecordIndex}
+     */
+    @Nullable
+    ActivityRecord hashNext;
+
+    ActivityRecord(int id, @NonNull Activity activity, int classIndex, @NonNull ActivityClassTimingAccumulator classTiming,
+                   @NonNull ActivityClassBucket classBucket, @NonNull ReferenceQueue<Activity> referenceQueue) {
+        this.id = id;
+        this.identityHash = System.identityHashCode(activity);
+        this.classIndex = classIndex;
+        this.classTiming = classTiming;
+        this.classBucket = classBucket;
+        this.reference = new Reference(activity, this, referenceQueue);
+        this.timing = new ActivityTiming(id, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Only called by the main thread after changing the screen time
+     */
+    void publishTiming() {
+        timing = new ActivityTiming(id, createdTimeNanos, firstStartedTimeNanos, firstResumedTimeNanos,
+                totalStartedNanos, totalResumedNanos, startedSinceNanos, resumedSinceNanos);
+    }
+
+    /**
+     * Move the record to the new instance of a recreated Activity
+     */
+    void attach(@NonNull Activity activity, @NonNull ReferenceQueue<Activity> referenceQueue) {
+        this.identityHash = System.identityHashCode(activity);
+        this.reference = new Reference(activity, this, referenceQueue);
+    }
+
+    @Nullable
+    ActivityRecord above(int stackFlag) {
+        switch (stackFlag) {
+            case FLAG_CREATED:
+                return createdAbove;
+            case FLAG_STARTED:
+                return startedAbove;
+            case FLAG_RESUMED:
+                return resumedAbove;
+            default:
+                return classAbove;
+        }
+    }
+
+    @Nullable
+    ActivityRecord below(int stackFlag) {
+        switch (stackFlag) {
+            case FLAG_CREATED:
+                return createdBelow;
+            case FLAG_STARTED:
+                return startedBelow;
+            case FLAG_RESUMED:
+                return resumedBelow;
+            default:
+                return classBelow;
+        }
+    }
+
+    void setAbove(int stackFlag, @Nullable ActivityRecord record) {
+        switch (stackFlag) {
+            case FLAG_CREATED:
+                createdAbove = record;
+                break;
+            case FLAG_STARTED:
+                startedAbove = record;
+                break;
+            case FLAG_RESUMED:
+                resumedAbove = record;
+                break;
+            default:
+                classAbove = record;
+                break;
+        }
+    }
+
+    void setBelow(int stackFlag, @Nullable ActivityRecord record) {
+        switch (stackFlag) {
+            case FLAG_CREATED:
+                createdBelow = record;
+                break;
+            case FLAG_STARTED:
+                startedBelow = record;
+                break;
+            case FLAG_RESUMED:
+                resumedBelow = record;
+                break;
+            default:
+                classBelow = record;
+                break;
+        }
+    }
+
+    /**
+     * Enqueued when the Activity is collected, so that a record whose Activity was never destroyed can be purged without scanning
+     */
+    static final class Reference extends WeakReference<Activity> {
+
+        @NonNull
+        final ActivityRecord record;
+
+        Reference(@NonNull Activity activity, @NonNull ActivityRecord record, @NonNull ReferenceQueue<Activity> queue) {
+            super(activity, queue);
+            this.record = record;
+        }
+    }
+}
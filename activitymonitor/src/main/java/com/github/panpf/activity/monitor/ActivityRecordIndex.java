@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Finds the {@link ActivityRecord} of an Activity by identity or by id in O(1).
+ * Not thread safe, callers are responsible for synchronization
+ */
+final class ActivityRecordIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    @NonNull
+    private ActivityRecord[] table = new ActivityRecord[INITIAL_CAPACITY];
+    @NonNull
+    private final SparseArray<ActivityRecord> idIndex = new SparseArray<>();
+    private int size;
+
+    void add(@NonNull ActivityRecord record) {
+        if (size + 1 > table.length - (table.length >> 2)) {
+            resize();
+        }
+        int index = record.identityHash & (table.length - 1);
+        record.hashNext = table[index];
+        table[index] = record;
+        idIndex.put(record.id, record);
+        size++;
+    }
+
+    @Nullable
+    ActivityRecord find(@NonNull Activity activity) {
+        ActivityRecord record = table[System.identityHashCode(activity) & (table.length - 1)];
+        while (record != null) {
+            if (record.reference.get() == activity) {
+                return record;
+            }
+            record = record.hashNext;
+        }
+        return null;
+    }
+
+    @Nullable
+    ActivityRecord findById(int id) {
+        return idIndex.get(id);
+    }
+
+    void remove(@NonNull ActivityRecord record) {
+        int index = record.identityHash & (table.length - 1);
+        ActivityRecord current = table[index];
+        ActivityRecord previous = null;
+        while (current != null) {
+            if (current == record) {
+                if (previous != null) {
+                    previous.hashNext = current.hashNext;
+                } else {
+                    table[index] = current.hashNext;
+                }
+                record.hashNext = null;
+                idIndex.remove(record.id);
+                size--;
+                return;
+            }
+            previous = current;
+            current = current.hashNext;
+        }
+    }
+
+    private void resize() {
+        ActivityRecord[] newTable = new ActivityRecord[table.length << 1];
+        for (ActivityRecord head : table) {
+            ActivityRecord record = head;
+            while (record != null) {
+                ActivityRecord next = record.hashNext;
+                int index = record.identityHash & (newTable.length - 1);
+                record.hashNext = newTable[index];
+                newTable[index] = record;
+                record = next;
+            }
+        }
+        table = newTable;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A stack of {@link ActivityRecord} linked through the record's own links, push and remove are both O(1).
+ * Not thread safe, callers are responsible for synchronization
+ */
+final class ActivityStack {
+
+    private final int flag;
+
+    @Nullable
+    private ActivityRecord top;
+    @Nullable
+    private ActivityRecord bottom;
+    private int size;
+
+    /**
+     * @param flag One of {@link ActivityRecord#FLAG_CREATED}, {@link ActivityRecord#FLAG_STARTED}, {@link ActivityRecord#FLAG_RESUMED}, {@link ActivityRecord#FLAG_CLASS}
+     */
+    ActivityStack(int flag) {
+        this.flag = flag;
+    }
+
+    int flag() {
+        return flag;
+    }
+
+    @Nullable
+    ActivityRecord top() {
+        return top;
+    }
+
+    @Nullable
+    ActivityRecord bottom() {
+        return bottom;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The current references of the records, ordered from the bottom to the top
+     */
+    @NonNull
+    ActivityRecord.Reference[] toReferenceArray() {
+        if (size == 0) {
+            return MonitorState.EMPTY_REFERENCES;
+        }
+        ActivityRecord.Reference[] references = new ActivityRecord.Reference[size];
+        int index = 0;
+        ActivityRecord record = bottom;
+        while (record != null) {
+            references[index++] = record.reference;
+            record = record.above(flag);
+        }
+        return references;
+    }
+
+    boolean contains(@NonNull ActivityRecord record) {
+        return (record.flags & flag) != 0;
+    }
+
+    void push(@NonNull ActivityRecord record) {
+        if (contains(record)) {
+            return;
+        }
+        record.setBelow(flag, top);
+        record.setAbove(flag, null);
+        if (top != null) {
+            top.setAbove(flag, record);
+        } else {
+            bottom = record;
+        }
+        top = record;
+        record.flags |= flag;
+        size++;
+    }
+
+    void remove(@NonNull ActivityRecord record) {
+        if (!contains(record)) {
+            return;
+        }
+        ActivityRecord above = record.above(flag);
+        ActivityRecord below = record.below(flag);
+        if (above != null) {
+            above.setBelow(flag, below);
+        } else {
+            top = below;
+        }
+        if (below != null) {
+            below.setAbove(flag, above);
+        } else {
+            bottom = above;
+        }
+        record.setAbove(flag, null);
+        record.setBelow(flag, null);
+        record.flags &= ~flag;
+        size--;
+    }
+}
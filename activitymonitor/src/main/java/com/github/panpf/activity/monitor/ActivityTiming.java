@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Screen time of a single Activity at the moment of {@link ActivityMonitor#getActivityTiming(android.app.Activity)}, immutable.
+ * All times are in the SystemClock.elapsedRealtimeNanos() time base, 0 means the Activity has not reached that state yet
+ */
+public final class ActivityTiming {
+
+    private final int activityId;
+    private final long createdTimeNanos;
+    private final long firstStartedTimeNanos;
+    private final long firstResumedTimeNanos;
+    private final long startedNanos;
+    private final long resumedNanos;
+    /*
+     * Start of the current started and resumed period, not yet included in startedNanos and resumedNanos, 0 means none
+     */
+    private final long startedSinceNanos;
+    private final long resumedSinceNanos;
+
+    ActivityTiming(int activityId, long createdTimeNanos, long firstStartedTimeNanos, long firstResumedTimeNanos,
+                   long startedNanos, long resumedNanos, long startedSinceNanos, long resumedSinceNanos) {
+        this.activityId = activityId;
+        this.createdTimeNanos = createdTimeNanos;
+        this.firstStartedTimeNanos = firstStartedTimeNanos;
+        this.firstResumedTimeNanos = firstResumedTimeNanos;
+        this.startedNanos = startedNanos;
+        this.resumedNanos = resumedNanos;
+        this.startedSinceNanos = startedSinceNanos;
+        this.resumedSinceNanos = resumedSinceNanos;
+    }
+
+    /**
+     * @return The timing with the current started and resumed periods counted up to now
+     */
+    @NonNull
+    ActivityTiming at(long nowNanos) {
+        if (startedSinceNanos == 0 && resumedSinceNanos == 0) {
+            return this;
+        }
+        return new ActivityTiming(activityId, createdTimeNanos, firstStartedTimeNanos, firstResumedTimeNanos,
+                startedNanos + (startedSinceNanos != 0 ? nowNanos - startedSinceNanos : 0),
+                resumedNanos + (resumedSinceNanos != 0 ? nowNanos - resumedSinceNanos : 0), 0, 0);
+    }
+
+    public int getActivityId() {
+        return activityId;
+    }
+
+    public long getCreatedTimeNanos() {
+        return createdTimeNanos;
+    }
+
+    public long getFirstStartedTimeNanos() {
+        return firstStartedTimeNanos;
+    }
+
+    public long getFirstResumedTimeNanos() {
+        return firstResumedTimeNanos;
+    }
+
+    /**
+     * @return 0: The Activity has not been resumed yet or was created before monitoring started
+     */
+    public long getTimeToFirstResumeNanos() {
+        return createdTimeNanos != 0 && firstResumedTimeNanos != 0 ? firstResumedTimeNanos - createdTimeNanos : 0;
+    }
+
+    /**
+     * Total time the Activity has been started, including the current period if it is still started
+     */
+    public long getStartedNanos() {
+        return startedNanos;
+    }
+
+    /**
+     * Total time the Activity has been resumed, including the current period if it is still resumed
+     */
+    public long getResumedNanos() {
+        return resumedNanos;
+    }
+}
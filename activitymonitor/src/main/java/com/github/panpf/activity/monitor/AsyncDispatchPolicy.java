@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Deliver the events of a listener on the given {@link Executor} instead of the main thread.
+ * Every listener registered with a policy has its own FIFO queue, so the events arrive in order and
+ * the main thread only pays for one enqueue. An executor that rejects the task, for example after a shutdown,
+ * is treated like a full queue and the next event tries again
+ */
+public final class AsyncDispatchPolicy {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    @NonNull
+    private final Executor executor;
+    private final int queueCapacity;
+    @OverflowPolicy
+    private final int overflowPolicy;
+
+    public AsyncDispatchPolicy(@NonNull Executor executor, int queueCapacity, @OverflowPolicy int overflowPolicy) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be greater than 0: " + queueCapacity);
+        }
+        if (overflowPolicy != OverflowPolicy.DROP_OLDEST && overflowPolicy != OverflowPolicy.DROP_NEWEST) {
+            throw new IllegalArgumentException("Unknown overflowPolicy: " + overflowPolicy);
+        }
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public AsyncDispatchPolicy(@NonNull Executor executor) {
+        this(executor, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    @NonNull
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @OverflowPolicy
+    public int getOverflowPolicy() {
+        return overflowPolicy;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Wraps a listener registered with {@link AsyncDispatchPolicy}, the callbacks only put the event into a
+ * bounded ring buffer, which is drained in order on the policy's executor
+ */
+final class AsyncListener implements OnActivityCreatedListener, OnActivityStartedListener, OnActivityResumedListener,
+        OnActivityPausedListener, OnActivityStoppedListener, OnActivityDestroyedListener,
+        OnActivitySaveInstanceStateListener, OnActivityRecreatedListener, OnActivityLifecycleChangedListener, Runnable {
+
+    /**
+     * Marks an event that is delivered to {@link OnActivityLifecycleChangedListener}
+     */
+    private static final int LIFECYCLE_CHANGED = 1 << 8;
+
+    @NonNull
+    final Object delegate;
+    @NonNull
+    private final Executor executor;
+    @OverflowPolicy
+    private final int overflowPolicy;
+
+    @NonNull
+    private final int[] events;
+    @NonNull
+    private final Activity[] activities;
+    @NonNull
+    private final Bundle[] bundles;
+    @NonNull
+    private final boolean[] flags;
+    private int head;
+    private int size;
+    private boolean draining;
+    private boolean cancelled;
+
+    AsyncListener(@NonNull Object delegate, @NonNull AsyncDispatchPolicy policy) {
+        this.delegate = delegate;
+        this.executor = policy.getExecutor();
+        this.overflowPolicy = policy.getOverflowPolicy();
+        int capacity = policy.getQueueCapacity();
+        this.events = new int[capacity];
+        this.activities = new Activity[capacity];
+        this.bundles = new Bundle[capacity];
+        this.flags = new boolean[capacity];
+    }
+
+    @Override
+    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState, boolean first) {
+        enqueue(LifecycleEvent.CREATED, activity, savedInstanceState, first);
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity, boolean first) {
+        enqueue(LifecycleEvent.STARTED, activity, null, first);
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity, boolean first) {
+        enqueue(LifecycleEvent.RESUMED, activity, null, first);
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity, boolean last) {
+        enqueue(LifecycleEvent.PAUSED, activity, null, last);
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity, boolean last) {
+        enqueue(LifecycleEvent.STOPPED, activity, null, last);
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        enqueue(LifecycleEvent.SAVE_INSTANCE_STATE, activity, outState, false);
+    }
+
+    @Override
+    public void onActivityDestroyed(@NonNull Activity activity, boolean last) {
+        enqueue(LifecycleEvent.DESTROYED, activity, null, last);
+    }
+
+    @Override
+    public void onActivityRecreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        enqueue(LifecycleEvent.RECREATED, activity, savedInstanceState, false);
+    }
+
+    @Override
+    public void onActivityLifecycleChanged(@NonNull Activity activity, @LifecycleEvent int newState) {
+        enqueue(newState | LIFECYCLE_CHANGED, activity, null, false);
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+        while (size > 0) {
+            poll();
+        }
+    }
+
+    private void enqueue(int event, @NonNull Activity activity, @Nullable Bundle bundle, boolean flag) {
+        boolean startDrain;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            int capacity = events.length;
+            if (size == capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                    return;
+                }
+                poll();
+            }
+            int index = (head + size) % capacity;
+            events[index] = event;
+            activities[index] = activity;
+            bundles[index] = bundle;
+            flags[index] = flag;
+            size++;
+            startDrain = !draining;
+            draining = true;
+        }
+        if (startDrain) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // For example a shut down executor. Handled like an overflow, the main thread must not see it
+                synchronized (this) {
+                    draining = false;
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST && size > 0) {
+                        int tail = (head + size - 1) % events.length;
+                        activities[tail] = null;
+                        bundles[tail] = null;
+                        size--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void poll() {
+        activities[head] = null;
+        bundles[head] = null;
+        head = (head + 1) % events.length;
+        size--;
+    }
+
+    @Override
+    public void run() {
+        boolean completed = false;
+        try {
+            drain();
+            completed = true;
+        } finally {
+            if (!completed) {
+                // A listener threw, keep draining the rest in a new task so the listener does not stop receiving events
+                boolean restart;
+                synchronized (this) {
+                    restart = size > 0 && !cancelled;
+                    draining = restart;
+                }
+                if (restart) {
+                    try {
+                        executor.execute(this);
+                    } catch (RuntimeException e) {
+                        synchronized (this) {
+                            draining = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            final int event;
+            final Activity activity;
+            final Bundle bundle;
+            final boolean flag;
+            synchronized (this) {
+                if (size == 0 || cancelled) {
+                    draining = false;
+                    return;
+                }
+                event = events[head];
+                activity = activities[head];
+                bundle = bundles[head];
+                flag = flags[head];
+                poll();
+            }
+            deliver(event, activity, bundle, flag);
+        }
+    }
+
+    private void deliver(int event, @NonNull Activity activity, @Nullable Bundle bundle, boolean flag) {
+        if ((event & LIFECYCLE_CHANGED) != 0) {
+            ((OnActivityLifecycleChangedListener) delegate).onActivityLifecycleChanged(activity, event & ~LIFECYCLE_CHANGED);
+            return;
+        }
+        switch (event) {
+            case LifecycleEvent.CREATED:
+                ((OnActivityCreatedListener) delegate).onActivityCreated(activity, bundle, flag);
+                break;
+            case LifecycleEvent.STARTED:
+                ((OnActivityStartedListener) delegate).onActivityStarted(activity, flag);
+                break;
+            case LifecycleEvent.RESUMED:
+                ((OnActivityResumedListener) delegate).onActivityResumed(activity, flag);
+                break;
+            case LifecycleEvent.PAUSED:
+                ((OnActivityPausedListener) delegate).onActivityPaused(activity, flag);
+                break;
+            case LifecycleEvent.STOPPED:
+                ((OnActivityStoppedListener) delegate).onActivityStopped(activity, flag);
+                break;
+            case LifecycleEvent.SAVE_INSTANCE_STATE:
+                //noinspection ConstantConditions
+                ((OnActivitySaveInstanceStateListener) delegate).onActivitySaveInstanceState(activity, bundle);
+                break;
+            case LifecycleEvent.DESTROYED:
+                ((OnActivityDestroyedListener) delegate).onActivityDestroyed(activity, flag);
+                break;
+            case LifecycleEvent.RECREATED:
+                ((OnActivityRecreatedListener) delegate).onActivityRecreated(activity, bundle);
+                break;
+        }
+    }
+}
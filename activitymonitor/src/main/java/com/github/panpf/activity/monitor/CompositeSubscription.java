@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Arrays;
+
+/**
+ * Disposes many {@link Subscription} together. Bound to a {@link LifecycleOwner}, a single observer disposes all of them
+ * when the owner is destroyed, instead of one observer per observeXxx() call
+ */
+public final class CompositeSubscription implements Subscription {
+
+    @NonNull
+    private Subscription[] subscriptions = new Subscription[4];
+    private int size;
+    private boolean disposed;
+
+    public CompositeSubscription() {
+    }
+
+    /**
+     * @throws IllegalStateException The owner is already destroyed
+     */
+    public CompositeSubscription(@NonNull LifecycleOwner owner) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            throw new IllegalStateException("LifecycleOwner state is DESTROYED");
+        }
+        owner.getLifecycle().addObserver(new AutoDisposeObserver(this));
+    }
+
+    /**
+     * Disposed right away if this composite is already disposed
+     */
+    public void add(@NonNull Subscription subscription) {
+        synchronized (this) {
+            if (!disposed) {
+                if (size == subscriptions.length) {
+                    subscriptions = Arrays.copyOf(subscriptions, size * 2);
+                }
+                subscriptions[size++] = subscription;
+                return;
+            }
+        }
+        subscription.dispose();
+    }
+
+    @Override
+    public void dispose() {
+        Subscription[] subscriptions;
+        int size;
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            disposed = true;
+            subscriptions = this.subscriptions;
+            size = this.size;
+            this.subscriptions = new Subscription[0];
+            this.size = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            subscriptions[i].dispose();
+        }
+    }
+
+    @Override
+    public synchronized boolean isDisposed() {
+        return disposed;
+    }
+
+    private static class AutoDisposeObserver implements LifecycleEventObserver {
+        @NonNull
+        private final Subscription subscription;
+
+        AutoDisposeObserver(@NonNull Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                subscription.dispose();
+                source.getLifecycle().removeObserver(this);
+            }
+        }
+    }
+}
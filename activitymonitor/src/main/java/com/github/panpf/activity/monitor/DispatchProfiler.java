@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long each listener takes to handle each {@link LifecycleEvent}, see {@link ActivityMonitor#enableDispatchProfiling(long, OnSlowDispatchListener)}.
+ * The stats are kept on the {@link ListenerEntry}, so recording takes no lock and unregistering a listener drops its stats
+ */
+final class DispatchProfiler {
+
+    private final long budgetNanos;
+    @Nullable
+    private final OnSlowDispatchListener slowDispatchListener;
+
+    DispatchProfiler(long budgetNanos, @Nullable OnSlowDispatchListener slowDispatchListener) {
+        this.budgetNanos = budgetNanos;
+        this.slowDispatchListener = slowDispatchListener;
+    }
+
+    /**
+     * Only called by the main thread
+     */
+    void record(@NonNull ListenerEntry entry, @LifecycleEvent int event, long costNanos) {
+        Object listener = entry.listener;
+        ListenerStats stats = entry.stats;
+        if (stats == null || stats.profiler != this) {
+            Object realListener = listener instanceof AsyncListener ? ((AsyncListener) listener).delegate : listener;
+            stats = new ListenerStats(this, realListener.getClass().getName());
+            entry.stats = stats;
+        }
+        stats.record(event, costNanos);
+
+        OnSlowDispatchListener slowDispatchListener = this.slowDispatchListener;
+        if (slowDispatchListener != null && budgetNanos > 0 && costNanos > budgetNanos) {
+            Object realListener = listener instanceof AsyncListener ? ((AsyncListener) listener).delegate : listener;
+            slowDispatchListener.onSlowDispatch(realListener, event, costNanos);
+        }
+    }
+
+    /**
+     * @param entries The current registrations, only their stats of this session are returned
+     */
+    @NonNull
+    List<ListenerStats> getStats(@NonNull ListenerEntry[] entries) {
+        List<ListenerStats> statsList = new ArrayList<>(entries.length);
+        for (ListenerEntry entry : entries) {
+            ListenerStats stats = entry.stats;
+            if (stats != null && stats.profiler == this) {
+                statsList.add(stats);
+            }
+        }
+        return statsList;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory fences for the seqlocks over plain arrays and mapped buffers, whose data can not be volatile.
+ * Uses the static fences of java.lang.invoke.VarHandle where they exist (Java 9, Android 13),
+ * then the fences of sun.misc.Unsafe (Java 8, Android 8), otherwise an atomic read-modify-write, which is a full fence.
+ * The fences are called reflectively, which costs far more than the fence itself, so they are kept out of per-event paths,
+ * see FenceBenchmark. Does not depend on Android
+ */
+final class Fences {
+
+    @Nullable
+    private static final Object TARGET;
+    @Nullable
+    private static final Method LOAD_LOAD;
+    @Nullable
+    private static final Method STORE_STORE;
+    private static final AtomicInteger FALLBACK = new AtomicInteger();
+    /**
+     * Passed explicitly, so no varargs array is allocated per call
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    static {
+        Object target = null;
+        Method loadLoad = null;
+        Method storeStore = null;
+        try {
+            Class<?> varHandleClass = Class.forName("java.lang.invoke.VarHandle");
+            loadLoad = varHandleClass.getMethod("loadLoadFence");
+            storeStore = varHandleClass.getMethod("storeStoreFence");
+        } catch (Throwable e) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field;
+                try {
+                    field = unsafeClass.getDeclaredField("theUnsafe");
+                } catch (NoSuchFieldException e1) {
+                    field = unsafeClass.getDeclaredField("THE_ONE");
+                }
+                field.setAccessible(true);
+                target = field.get(null);
+                loadLoad = unsafeClass.getMethod("loadFence");
+                storeStore = unsafeClass.getMethod("storeFence");
+            } catch (Throwable e1) {
+                target = null;
+                loadLoad = null;
+                storeStore = null;
+            }
+        }
+        TARGET = target;
+        LOAD_LOAD = loadLoad;
+        STORE_STORE = storeStore;
+    }
+
+    private Fences() {
+    }
+
+    /**
+     * Loads before the fence are not reordered with loads after it
+     */
+    static void loadLoad() {
+        invoke(LOAD_LOAD);
+    }
+
+    /**
+     * Stores before the fence are not reordered with stores after it
+     */
+    static void storeStore() {
+        invoke(STORE_STORE);
+    }
+
+    private static void invoke(@Nullable Method fence) {
+        if (fence != null) {
+            try {
+                fence.invoke(TARGET, NO_ARGS);
+                return;
+            } catch (Exception e) {
+                // Fall through to the full fence
+            }
+        }
+        FALLBACK.incrementAndGet();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Mirrors lifecycle events and the stack summary into a memory mapped file, see {@link FlightRecorderFormat} for the layout.
+ * Writes go to the page cache without fsync, so they survive the process being killed but not the device losing power.
+ * Only the main thread writes
+ */
+final class FlightRecorder {
+
+    @NonNull
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @NonNull
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int classAreaOffset;
+    private final int classAreaSize;
+
+    private long writeCount;
+    private int classNameCount;
+    private int classNameBytes;
+    /**
+     * Set once a class name does not fit, the names of it and all later class indexes are left out without encoding them again
+     */
+    private boolean classAreaFull;
+
+    FlightRecorder(@NonNull File file, int capacity) throws IOException {
+        this(file, capacity, Process.myPid());
+    }
+
+    /**
+     * Lets the tests run the recorder on a plain JVM
+     */
+    @VisibleForTesting
+    FlightRecorder(@NonNull File file, int capacity, int pid) throws IOException {
+        this.capacity = capacity;
+        this.classAreaSize = FlightRecorderFormat.DEFAULT_CLASS_AREA_SIZE;
+        this.classAreaOffset = FlightRecorderFormat.HEADER_SIZE + capacity * FlightRecorderFormat.EVENT_SIZE;
+        int fileSize = FlightRecorderFormat.fileSize(capacity, classAreaSize);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(fileSize);
+            // The mapping stays valid after the file is closed
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        // Invalidate the previous session first, so a half written header is never taken as valid
+        buffer.putInt(FlightRecorderFormat.OFFSET_MAGIC, 0);
+        buffer.putInt(FlightRecorderFormat.OFFSET_FORMAT_VERSION, FlightRecorderFormat.FORMAT_VERSION);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CAPACITY, capacity);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_AREA_SIZE, classAreaSize);
+        buffer.putLong(FlightRecorderFormat.OFFSET_WRITE_COUNT, 0);
+        buffer.putLong(FlightRecorderFormat.OFFSET_START_TIME_MILLIS, System.currentTimeMillis());
+        buffer.putInt(FlightRecorderFormat.OFFSET_PID, pid);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_COUNT, 0);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_BYTES, 0);
+        writeSummary(0, 0, 0, null, null);
+        buffer.putInt(FlightRecorderFormat.OFFSET_MAGIC, FlightRecorderFormat.MAGIC);
+    }
+
+    void record(@NonNull ActivityClassTable classTable, int activityId, int classIndex, @LifecycleEvent int event, long timestampNanos,
+                int createdCount, int startedCount, int resumedCount,
+                @Nullable ActivityRecord lastCreated, @Nullable ActivityRecord lastResumed) {
+        if (classIndex >= classNameCount && !classAreaFull) {
+            writeClassNames(classTable, classIndex);
+        }
+
+        int offset = FlightRecorderFormat.HEADER_SIZE + (int) (writeCount % capacity) * FlightRecorderFormat.EVENT_SIZE;
+        buffer.putLong(offset, timestampNanos);
+        buffer.putInt(offset + 8, activityId);
+        buffer.putInt(offset + 12, classIndex);
+        buffer.put(offset + 16, (byte) event);
+        buffer.put(offset + 17, (byte) 0);
+        buffer.putShort(offset + 18, FlightRecorderFormat.toShort(createdCount));
+        buffer.putShort(offset + 20, FlightRecorderFormat.toShort(startedCount));
+        buffer.putShort(offset + 22, FlightRecorderFormat.toShort(resumedCount));
+
+        writeSummary(createdCount, startedCount, resumedCount, lastCreated, lastResumed);
+        // Counted last, an event cut off by the process dying is not counted
+        buffer.putLong(FlightRecorderFormat.OFFSET_WRITE_COUNT, ++writeCount);
+    }
+
+    private void writeSummary(int createdCount, int startedCount, int resumedCount,
+                              @Nullable ActivityRecord lastCreated, @Nullable ActivityRecord lastResumed) {
+        buffer.putInt(FlightRecorderFormat.OFFSET_CREATED_COUNT, createdCount);
+        buffer.putInt(FlightRecorderFormat.OFFSET_STARTED_COUNT, startedCount);
+        buffer.putInt(FlightRecorderFormat.OFFSET_RESUMED_COUNT, resumedCount);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_CREATED_ACTIVITY_ID, lastCreated != null ? lastCreated.id : -1);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_CREATED_CLASS_INDEX, lastCreated != null ? lastCreated.classIndex : -1);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_ACTIVITY_ID, lastResumed != null ? lastResumed.id : -1);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_CLASS_INDEX, lastResumed != null ? lastResumed.classIndex : -1);
+    }
+
+    /**
+     * Class indexes are assigned in order, so the names are appended up to the given index. Once the area is full the rest are left out
+     */
+    private void writeClassNames(@NonNull ActivityClassTable classTable, int toClassIndex) {
+        while (classNameCount <= toClassIndex) {
+            String className = classTable.getClassName(classNameCount);
+            byte[] bytes = (className != null ? className : "").getBytes(UTF_8);
+            if (bytes.length > Short.MAX_VALUE || classNameBytes + 2 + bytes.length > classAreaSize) {
+                classAreaFull = true;
+                return;
+            }
+            ByteBuffer area = buffer.duplicate();
+            area.position(classAreaOffset + classNameBytes);
+            area.putShort((short) bytes.length);
+            area.put(bytes);
+            classNameBytes += 2 + bytes.length;
+            classNameCount++;
+            buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_BYTES, classNameBytes);
+            buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_COUNT, classNameCount);
+        }
+    }
+}
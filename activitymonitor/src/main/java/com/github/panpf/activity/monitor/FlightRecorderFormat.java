@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+/**
+ * Binary layout of the flight recorder file, shared by {@link FlightRecorder} and {@link FlightRecording}.
+ * All numbers are big endian. Must not depend on Android so that the decoder runs on a plain JVM
+ * <pre>
+ * header      HEADER_SIZE bytes, see the OFFSET_* constants
+ * events      capacity * EVENT_SIZE bytes, a ring buffer, the event with sequence n is in slot n % capacity
+ * class names classAreaSize bytes, index i is the i-th entry, each entry is a short length followed by UTF-8 bytes
+ * </pre>
+ * An event is: long timestampNanos, int activityId, int classIndex, byte event, byte reserved,
+ * short createdCount, short startedCount, short resumedCount
+ */
+final class FlightRecorderFormat {
+
+    static final int MAGIC = 0x414D4652;
+    static final int FORMAT_VERSION = 1;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_FORMAT_VERSION = 4;
+    static final int OFFSET_CAPACITY = 8;
+    static final int OFFSET_CLASS_AREA_SIZE = 12;
+    static final int OFFSET_WRITE_COUNT = 16;
+    static final int OFFSET_START_TIME_MILLIS = 24;
+    static final int OFFSET_PID = 32;
+    static final int OFFSET_CLASS_NAME_COUNT = 36;
+    static final int OFFSET_CLASS_NAME_BYTES = 40;
+    static final int OFFSET_CREATED_COUNT = 44;
+    static final int OFFSET_STARTED_COUNT = 48;
+    static final int OFFSET_RESUMED_COUNT = 52;
+    static final int OFFSET_LAST_CREATED_ACTIVITY_ID = 56;
+    static final int OFFSET_LAST_CREATED_CLASS_INDEX = 60;
+    static final int OFFSET_LAST_RESUMED_ACTIVITY_ID = 64;
+    static final int OFFSET_LAST_RESUMED_CLASS_INDEX = 68;
+    static final int HEADER_SIZE = 72;
+
+    static final int EVENT_SIZE = 24;
+
+    static final int DEFAULT_CLASS_AREA_SIZE = 16 * 1024;
+    static final int MAX_CAPACITY = 1024 * 1024;
+
+    private FlightRecorderFormat() {
+    }
+
+    static int fileSize(int capacity, int classAreaSize) {
+        return HEADER_SIZE + capacity * EVENT_SIZE + classAreaSize;
+    }
+
+    static short toShort(int count) {
+        return (short) Math.min(count, Short.MAX_VALUE);
+    }
+}
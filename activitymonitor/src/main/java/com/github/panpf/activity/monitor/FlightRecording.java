@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A session written by {@link ActivityMonitor#enableFlightRecorder(File, int)}, read back with {@link #read(File)}.
+ * Read the file before enabling the flight recorder again with the same file, enabling it starts a new session.
+ * Does not depend on Android, can be used on a plain JVM
+ */
+public final class FlightRecording {
+
+    private final long startTimeMillis;
+    private final int pid;
+    private final int createdActivityCount;
+    private final int startedActivityCount;
+    private final int resumedActivityCount;
+    private final int lastCreatedActivityId;
+    @Nullable
+    private final String lastCreatedActivityClassName;
+    private final int lastResumedActivityId;
+    @Nullable
+    private final String lastResumedActivityClassName;
+    @NonNull
+    private final LifecycleEventLog events;
+
+    private FlightRecording(long startTimeMillis, int pid, int createdActivityCount, int startedActivityCount, int resumedActivityCount,
+                            int lastCreatedActivityId, @Nullable String lastCreatedActivityClassName,
+                            int lastResumedActivityId, @Nullable String lastResumedActivityClassName, @NonNull LifecycleEventLog events) {
+        this.startTimeMillis = startTimeMillis;
+        this.pid = pid;
+        this.createdActivityCount = createdActivityCount;
+        this.startedActivityCount = startedActivityCount;
+        this.resumedActivityCount = resumedActivityCount;
+        this.lastCreatedActivityId = lastCreatedActivityId;
+        this.lastCreatedActivityClassName = lastCreatedActivityClassName;
+        this.lastResumedActivityId = lastResumedActivityId;
+        this.lastResumedActivityClassName = lastResumedActivityClassName;
+        this.events = events;
+    }
+
+    /**
+     * @return null: The file does not exist or is not a complete flight recording
+     */
+    @Nullable
+    public static FlightRecording read(@NonNull File file) throws IOException {
+        if (!file.isFile() || file.length() < FlightRecorderFormat.HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.readFully(bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Nullable
+    static FlightRecording decode(@NonNull ByteBuffer buffer) {
+        if (buffer.getInt(FlightRecorderFormat.OFFSET_MAGIC) != FlightRecorderFormat.MAGIC
+                || buffer.getInt(FlightRecorderFormat.OFFSET_FORMAT_VERSION) != FlightRecorderFormat.FORMAT_VERSION) {
+            return null;
+        }
+        int capacity = buffer.getInt(FlightRecorderFormat.OFFSET_CAPACITY);
+        int classAreaSize = buffer.getInt(FlightRecorderFormat.OFFSET_CLASS_AREA_SIZE);
+        if (capacity <= 0 || classAreaSize < 0
+                || (long) FlightRecorderFormat.HEADER_SIZE + (long) capacity * FlightRecorderFormat.EVENT_SIZE + classAreaSize > buffer.limit()) {
+            return null;
+        }
+        long writeCount = buffer.getLong(FlightRecorderFormat.OFFSET_WRITE_COUNT);
+        if (writeCount < 0) {
+            return null;
+        }
+
+        String[] classNames = decodeClassNames(buffer, FlightRecorderFormat.HEADER_SIZE + capacity * FlightRecorderFormat.EVENT_SIZE, classAreaSize);
+
+        // Once the ring buffer has wrapped, the oldest slot may have been half overwritten by an event that was never counted
+        int count = (int) Math.min(writeCount, capacity - 1);
+        long firstSequence = writeCount - count;
+        int[] activityIds = new int[count];
+        String[] activityClassNames = new String[count];
+        int[] events = new int[count];
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            int offset = FlightRecorderFormat.HEADER_SIZE + (int) ((firstSequence + i) % capacity) * FlightRecorderFormat.EVENT_SIZE;
+            timestamps[i] = buffer.getLong(offset);
+            activityIds[i] = buffer.getInt(offset + 8);
+            activityClassNames[i] = className(classNames, buffer.getInt(offset + 12));
+            events[i] = buffer.get(offset + 16);
+        }
+
+        return new FlightRecording(
+                buffer.getLong(FlightRecorderFormat.OFFSET_START_TIME_MILLIS),
+                buffer.getInt(FlightRecorderFormat.OFFSET_PID),
+                buffer.getInt(FlightRecorderFormat.OFFSET_CREATED_COUNT),
+                buffer.getInt(FlightRecorderFormat.OFFSET_STARTED_COUNT),
+                buffer.getInt(FlightRecorderFormat.OFFSET_RESUMED_COUNT),
+                buffer.getInt(FlightRecorderFormat.OFFSET_LAST_CREATED_ACTIVITY_ID),
+                className(classNames, buffer.getInt(FlightRecorderFormat.OFFSET_LAST_CREATED_CLASS_INDEX)),
+                buffer.getInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_ACTIVITY_ID),
+                className(classNames, buffer.getInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_CLASS_INDEX)),
+                new LifecycleEventLog(firstSequence, 0, count, activityIds, activityClassNames, events, timestamps)
+        );
+    }
+
+    @NonNull
+    private static String[] decodeClassNames(@NonNull ByteBuffer buffer, int areaOffset, int areaSize) {
+        int count = buffer.getInt(FlightRecorderFormat.OFFSET_CLASS_NAME_COUNT);
+        int usedBytes = buffer.getInt(FlightRecorderFormat.OFFSET_CLASS_NAME_BYTES);
+        if (count <= 0 || usedBytes <= 0 || usedBytes > areaSize) {
+            return new String[0];
+        }
+        Charset utf8 = Charset.forName("UTF-8");
+        String[] classNames = new String[count];
+        int position = areaOffset;
+        int end = areaOffset + usedBytes;
+        for (int i = 0; i < count && position + 2 <= end; i++) {
+            int length = buffer.getShort(position);
+            if (length < 0 || position + 2 + length > end) {
+                break;
+            }
+            classNames[i] = new String(buffer.array(), buffer.arrayOffset() + position + 2, length, utf8);
+            position += 2 + length;
+        }
+        return classNames;
+    }
+
+    @Nullable
+    private static String className(@NonNull String[] classNames, int classIndex) {
+        return classIndex >= 0 && classIndex < classNames.length ? classNames[classIndex] : null;
+    }
+
+    /**
+     * Wall clock time when the session started
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getCreatedActivityCount() {
+        return createdActivityCount;
+    }
+
+    public int getStartedActivityCount() {
+        return startedActivityCount;
+    }
+
+    public int getResumedActivityCount() {
+        return resumedActivityCount;
+    }
+
+    /**
+     * @return -1: No Activity was created at the end of the session
+     */
+    public int getLastCreatedActivityId() {
+        return lastCreatedActivityId;
+    }
+
+    @Nullable
+    public String getLastCreatedActivityClassName() {
+        return lastCreatedActivityClassName;
+    }
+
+    /**
+     * @return -1: No Activity was resumed at the end of the session
+     */
+    public int getLastResumedActivityId() {
+        return lastResumedActivityId;
+    }
+
+    @Nullable
+    public String getLastResumedActivityClassName() {
+        return lastResumedActivityClassName;
+    }
+
+    /**
+     * The latest events of the session, ordered from the oldest to the newest
+     */
+    @NonNull
+    public LifecycleEventLog getEvents() {
+        return events;
+    }
+}
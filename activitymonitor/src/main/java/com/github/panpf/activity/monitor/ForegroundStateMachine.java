@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Turns the started stack becoming empty or non empty into settled foreground and background transitions.
+ * The app only goes to the background after the started stack has stayed empty for the grace period,
+ * and never while an Activity is being recreated for a configuration change. Driven by the main thread
+ */
+final class ForegroundStateMachine implements Runnable {
+
+    static final long DEFAULT_GRACE_PERIOD_MILLIS = 700;
+
+    @NonNull
+    private static final OnAppVisibilityChangedListener[] EMPTY_LISTENERS = new OnAppVisibilityChangedListener[0];
+
+    @NonNull
+    private final ActivityStack startedActivityStack;
+    @Nullable
+    private Handler handler;
+    private boolean backgroundPending;
+
+    private volatile long gracePeriodMillis = DEFAULT_GRACE_PERIOD_MILLIS;
+    private volatile boolean foreground;
+    @NonNull
+    private volatile OnAppVisibilityChangedListener[] listeners = EMPTY_LISTENERS;
+
+    ForegroundStateMachine(@NonNull ActivityStack startedActivityStack) {
+        this.startedActivityStack = startedActivityStack;
+    }
+
+    void setGracePeriodMillis(long gracePeriodMillis) {
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    boolean isForeground() {
+        return foreground;
+    }
+
+    synchronized void addListener(@NonNull OnAppVisibilityChangedListener listener) {
+        OnAppVisibilityChangedListener[] oldListeners = listeners;
+        OnAppVisibilityChangedListener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+        newListeners[oldListeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    synchronized void removeListener(@NonNull OnAppVisibilityChangedListener listener) {
+        OnAppVisibilityChangedListener[] oldListeners = listeners;
+        for (int i = 0; i < oldListeners.length; i++) {
+            if (oldListeners[i] == listener) {
+                OnAppVisibilityChangedListener[] newListeners = new OnAppVisibilityChangedListener[oldListeners.length - 1];
+                System.arraycopy(oldListeners, 0, newListeners, 0, i);
+                System.arraycopy(oldListeners, i + 1, newListeners, i, newListeners.length - i);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when the first Activity is started
+     */
+    void onFirstStarted() {
+        if (backgroundPending) {
+            backgroundPending = false;
+            //noinspection ConstantConditions
+            handler.removeCallbacks(this);
+        }
+        if (!foreground) {
+            foreground = true;
+            OnAppVisibilityChangedListener[] listeners = this.listeners;
+            for (OnAppVisibilityChangedListener listener : listeners) {
+                listener.onForeground();
+            }
+        }
+    }
+
+    /**
+     * Called when the last started Activity is stopped
+     */
+    void onLastStopped(boolean changingConfigurations) {
+        if (!foreground || backgroundPending) {
+            return;
+        }
+        long gracePeriodMillis = this.gracePeriodMillis;
+        if (gracePeriodMillis <= 0 && !changingConfigurations) {
+            run();
+            return;
+        }
+        // Even without a grace period, wait until the recreated Activity has been started
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        backgroundPending = true;
+        handler.postDelayed(this, Math.max(gracePeriodMillis, 0));
+    }
+
+    @Override
+    public void run() {
+        backgroundPending = false;
+        if (!foreground || startedActivityStack.size() > 0) {
+            return;
+        }
+        foreground = false;
+        OnAppVisibilityChangedListener[] listeners = this.listeners;
+        for (OnAppVisibilityChangedListener listener : listeners) {
+            listener.onBackground();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Watches destroyed activities through weak references in a fixed number of slots, when all slots are taken the oldest one is given up.
+ * A reference that is enqueued frees its slot in O(1). Once a watched Activity has been destroyed for the delay,
+ * a GC is requested on a background thread and the activities that are still reachable shortly after are reported. The heap is never dumped.
+ * Driven by the main thread
+ */
+final class LeakWatcher implements Runnable {
+
+    /**
+     * How long to wait for the references to be enqueued after the GC hint
+     */
+    private static final long GC_WAIT_MILLIS = 100;
+
+    @NonNull
+    private final ActivityClassTable classTable;
+    private final long delayMillis;
+    @Nullable
+    private final OnActivityLeakListener listener;
+    @NonNull
+    private final WatchedReference[] slots;
+    @NonNull
+    private final ReferenceQueue<Activity> queue = new ReferenceQueue<>();
+    @NonNull
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * Runtime.gc() blocks the calling thread for the whole collection
+     */
+    @NonNull
+    private final Runnable gcRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Runtime.getRuntime().gc();
+            handler.postDelayed(LeakWatcher.this, GC_WAIT_MILLIS);
+        }
+    };
+    @Nullable
+    private HandlerThread gcThread;
+    @Nullable
+    private Handler gcHandler;
+    private int nextSlot;
+    private boolean scheduled;
+    private boolean gcRequested;
+    @NonNull
+    private volatile List<RetainedActivities> retained = Collections.emptyList();
+
+    LeakWatcher(@NonNull ActivityClassTable classTable, long delayMillis, int maxWatched, @Nullable OnActivityLeakListener listener) {
+        this.classTable = classTable;
+        this.delayMillis = delayMillis;
+        this.listener = listener;
+        this.slots = new WatchedReference[maxWatched];
+    }
+
+    void watch(@NonNull Activity activity, int classIndex) {
+        drainQueue();
+        int slot = nextSlot;
+        for (int i = 0; i < slots.length && slots[slot] != null; i++) {
+            slot = (slot + 1) % slots.length;
+        }
+        // All taken, the slot after the last one written holds the oldest
+        if (slots[slot] != null) {
+            slots[slot].clear();
+        }
+        slots[slot] = new WatchedReference(activity, classIndex, slot, nowMillis(), queue);
+        nextSlot = (slot + 1) % slots.length;
+        schedule(delayMillis);
+    }
+
+    @NonNull
+    List<RetainedActivities> getRetained() {
+        return retained;
+    }
+
+    void stop() {
+        handler.removeCallbacks(this);
+        scheduled = false;
+        if (gcThread != null) {
+            gcThread.quit();
+        }
+    }
+
+    @Override
+    public void run() {
+        // A GC that was still running when stop() was called posts anyway
+        if (!scheduled) {
+            return;
+        }
+        scheduled = false;
+        drainQueue();
+        long now = nowMillis();
+        long nextDueMillis = Long.MAX_VALUE;
+        boolean due = false;
+        for (WatchedReference reference : slots) {
+            if (reference != null && !reference.reported) {
+                long dueMillis = reference.destroyedMillis + delayMillis;
+                if (dueMillis <= now) {
+                    due = true;
+                } else {
+                    nextDueMillis = Math.min(nextDueMillis, dueMillis);
+                }
+            }
+        }
+
+        if (due && !gcRequested) {
+            // Give the unreachable ones a chance to be enqueued before reporting
+            gcRequested = true;
+            scheduled = true;
+            Handler gcHandler = this.gcHandler;
+            if (gcHandler == null) {
+                HandlerThread gcThread = new HandlerThread("LeakWatcher");
+                gcThread.start();
+                gcHandler = new Handler(gcThread.getLooper());
+                this.gcThread = gcThread;
+                this.gcHandler = gcHandler;
+            }
+            gcHandler.post(gcRunnable);
+            return;
+        }
+        gcRequested = false;
+
+        if (due) {
+            for (WatchedReference reference : slots) {
+                if (reference != null && !reference.reported && reference.destroyedMillis + delayMillis <= now) {
+                    reference.reported = true;
+                }
+            }
+            List<RetainedActivities> retained = summarize(now);
+            this.retained = retained;
+            if (listener != null) {
+                listener.onActivityLeaked(retained);
+            }
+        }
+        if (nextDueMillis != Long.MAX_VALUE) {
+            schedule(nextDueMillis - now);
+        }
+    }
+
+    private void drainQueue() {
+        Reference<? extends Activity> reference;
+        boolean changed = false;
+        while ((reference = queue.poll()) != null) {
+            WatchedReference watchedReference = (WatchedReference) reference;
+            if (slots[watchedReference.slot] == watchedReference) {
+                slots[watchedReference.slot] = null;
+                changed |= watchedReference.reported;
+            }
+        }
+        if (changed) {
+            retained = summarize(nowMillis());
+        }
+    }
+
+    /**
+     * Group the reported references by class
+     */
+    @NonNull
+    private List<RetainedActivities> summarize(long now) {
+        List<RetainedActivities> list = new ArrayList<>();
+        boolean[] done = new boolean[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            WatchedReference reference = slots[i];
+            if (reference == null || !reference.reported || done[i]) {
+                continue;
+            }
+            int count = 0;
+            long oldestMillis = reference.destroyedMillis;
+            for (int j = i; j < slots.length; j++) {
+                WatchedReference other = slots[j];
+                if (other != null && other.reported && !done[j] && other.classIndex == reference.classIndex) {
+                    done[j] = true;
+                    count++;
+                    oldestMillis = Math.min(oldestMillis, other.destroyedMillis);
+                }
+            }
+            String className = classTable.getClassName(reference.classIndex);
+            list.add(new RetainedActivities(className != null ? className : "", count, now - oldestMillis));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private void schedule(long delayMillis) {
+        if (!scheduled) {
+            scheduled = true;
+            handler.postDelayed(this, Math.max(delayMillis, 0));
+        }
+    }
+
+    private static long nowMillis() {
+        return ElapsedClock.nanos() / 1000000L;
+    }
+
+    private static final class WatchedReference extends WeakReference<Activity> {
+
+        final int classIndex;
+        final int slot;
+        final long destroyedMillis;
+        boolean reported;
+
+        WatchedReference(@NonNull Activity activity, int classIndex, int slot, long destroyedMillis, @NonNull ReferenceQueue<Activity> queue) {
+            super(activity, queue);
+            this.classIndex = classIndex;
+            this.slot = slot;
+            this.destroyedMillis = destroyedMillis;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 @IntDef({LifecycleEvent.CREATED, LifecycleEvent.STARTED, LifecycleEvent.RESUMED, LifecycleEvent.PAUSED,
-        LifecycleEvent.STOPPED, LifecycleEvent.SAVE_INSTANCE_STATE, LifecycleEvent.DESTROYED})
+        LifecycleEvent.STOPPED, LifecycleEvent.SAVE_INSTANCE_STATE, LifecycleEvent.DESTROYED, LifecycleEvent.RECREATED})
 @Retention(RetentionPolicy.SOURCE)
 @Target({ElementType.TYPE_PARAMETER, ElementType.FIELD, ElementType.LOCAL_VARIABLE, ElementType.PARAMETER})
 public @interface LifecycleEvent {
@@ -35,4 +35,8 @@ public @interface LifecycleEvent {
     int STOPPED = 5;
     int SAVE_INSTANCE_STATE = 6;
     int DESTROYED = 7;
+    /**
+     * Replaces the DESTROYED and CREATED pair of a configuration change, only when recreation tracking is enabled
+     */
+    int RECREATED = 8;
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Lifecycle events collected for {@link OnActivityLifecycleBatchListener}, ordered from the oldest to the newest.
+ * Backed by primitive arrays that are reused, only valid during {@link OnActivityLifecycleBatchListener#onActivityLifecycleBatch(LifecycleEventBatch)}
+ */
+public final class LifecycleEventBatch {
+
+    @NonNull
+    private final ActivityClassTable classTable;
+    @NonNull
+    final int[] activityIds;
+    @NonNull
+    final int[] classIndexes;
+    @NonNull
+    final int[] events;
+    @NonNull
+    final long[] timestamps;
+    int size;
+
+    LifecycleEventBatch(@NonNull ActivityClassTable classTable, int capacity) {
+        this.classTable = classTable;
+        this.activityIds = new int[capacity];
+        this.classIndexes = new int[capacity];
+        this.events = new int[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @see ActivityMonitor#getActivityId(android.app.Activity)
+     */
+    public int getActivityId(int position) {
+        checkPosition(position);
+        return activityIds[position];
+    }
+
+    @Nullable
+    public String getActivityClassName(int position) {
+        checkPosition(position);
+        return classTable.getClassName(classIndexes[position]);
+    }
+
+    /**
+     * @return One of the {@link LifecycleEvent} constants
+     */
+    public int getEvent(int position) {
+        checkPosition(position);
+        return events[position];
+    }
+
+    /**
+     * Time of the event in the SystemClock.elapsedRealtimeNanos() time base
+     */
+    public long getTimestampNanos(int position) {
+        checkPosition(position);
+        return timestamps[position];
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size);
+        }
+    }
+}
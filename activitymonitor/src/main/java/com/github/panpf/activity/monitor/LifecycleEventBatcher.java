@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Collects events for one {@link OnActivityLifecycleBatchListener} and delivers them together when the main looper goes idle,
+ * the batch is full or the oldest event has waited for maxDelayMillis, whichever comes first. Driven by the main thread
+ */
+final class LifecycleEventBatcher implements MessageQueue.IdleHandler, Runnable {
+
+    @NonNull
+    final OnActivityLifecycleBatchListener listener;
+    @NonNull
+    private final LifecycleEventBatch batch;
+    private final long maxDelayMillis;
+    @NonNull
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean scheduled;
+    private volatile boolean cancelled;
+
+    LifecycleEventBatcher(@NonNull OnActivityLifecycleBatchListener listener, @NonNull ActivityClassTable classTable,
+                          int maxBatchSize, long maxDelayMillis) {
+        this.listener = listener;
+        this.batch = new LifecycleEventBatch(classTable, maxBatchSize);
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    void add(int activityId, int classIndex, @LifecycleEvent int event, long timestampNanos) {
+        if (cancelled) {
+            return;
+        }
+        LifecycleEventBatch batch = this.batch;
+        int index = batch.size;
+        batch.activityIds[index] = activityId;
+        batch.classIndexes[index] = classIndex;
+        batch.events[index] = event;
+        batch.timestamps[index] = timestampNanos;
+        batch.size = index + 1;
+
+        if (batch.size == batch.events.length) {
+            flush();
+        } else if (!scheduled) {
+            scheduled = true;
+            Looper.myQueue().addIdleHandler(this);
+            handler.postDelayed(this, maxDelayMillis);
+        }
+    }
+
+    /**
+     * Events not delivered yet are discarded
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    void flush() {
+        if (scheduled) {
+            scheduled = false;
+            Looper.myQueue().removeIdleHandler(this);
+            handler.removeCallbacks(this);
+        }
+        if (batch.size == 0) {
+            return;
+        }
+        try {
+            if (!cancelled) {
+                listener.onActivityLifecycleBatch(batch);
+            }
+        } finally {
+            batch.size = 0;
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        flush();
+        return false;
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+}
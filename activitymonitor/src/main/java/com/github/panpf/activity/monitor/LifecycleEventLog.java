@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The recorded lifecycle events at the moment of {@link ActivityMonitor#getRecordedEvents()}, ordered from the oldest to the newest
+ */
+public final class LifecycleEventLog {
+
+    @NonNull
+    static final LifecycleEventLog EMPTY = new LifecycleEventLog(0, 0, 0, new int[0], new String[0], new int[0], new long[0]);
+
+    private final long firstSequence;
+    private final int offset;
+    private final int size;
+    @NonNull
+    private final int[] activityIds;
+    @NonNull
+    private final String[] activityClassNames;
+    @NonNull
+    private final int[] events;
+    @NonNull
+    private final long[] timestamps;
+
+    LifecycleEventLog(long firstSequence, int offset, int size, @NonNull int[] activityIds, @NonNull String[] activityClassNames,
+                      @NonNull int[] events, @NonNull long[] timestamps) {
+        this.firstSequence = firstSequence;
+        this.offset = offset;
+        this.size = size;
+        this.activityIds = activityIds;
+        this.activityClassNames = activityClassNames;
+        this.events = events;
+        this.timestamps = timestamps;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The sequence number of the event at the given position, counted from the first recorded event
+     */
+    public long getSequence(int position) {
+        checkPosition(position);
+        return firstSequence + position;
+    }
+
+    /**
+     * @see ActivityMonitor#getActivityId(android.app.Activity)
+     */
+    public int getActivityId(int position) {
+        checkPosition(position);
+        return activityIds[offset + position];
+    }
+
+    @Nullable
+    public String getActivityClassName(int position) {
+        checkPosition(position);
+        return activityClassNames[position];
+    }
+
+    /**
+     * @return One of the {@link LifecycleEvent} constants
+     */
+    public int getEvent(int position) {
+        checkPosition(position);
+        return events[offset + position];
+    }
+
+    /**
+     * Time of the event in the SystemClock.elapsedRealtimeNanos() time base
+     */
+    public long getTimestampNanos(int position) {
+        checkPosition(position);
+        return timestamps[offset + position];
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size);
+        }
+    }
+}
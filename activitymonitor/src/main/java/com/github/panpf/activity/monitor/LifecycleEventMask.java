@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A combination of {@link LifecycleEvent}, bit n is set when the event with value n is included
+ */
+@IntDef(flag = true, value = {LifecycleEventMask.CREATED, LifecycleEventMask.STARTED, LifecycleEventMask.RESUMED,
+        LifecycleEventMask.PAUSED, LifecycleEventMask.STOPPED, LifecycleEventMask.SAVE_INSTANCE_STATE,
+        LifecycleEventMask.DESTROYED, LifecycleEventMask.RECREATED, LifecycleEventMask.ALL})
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE_PARAMETER, ElementType.FIELD, ElementType.LOCAL_VARIABLE, ElementType.PARAMETER})
+public @interface LifecycleEventMask {
+    int CREATED = 1 << LifecycleEvent.CREATED;
+    int STARTED = 1 << LifecycleEvent.STARTED;
+    int RESUMED = 1 << LifecycleEvent.RESUMED;
+    int PAUSED = 1 << LifecycleEvent.PAUSED;
+    int STOPPED = 1 << LifecycleEvent.STOPPED;
+    int SAVE_INSTANCE_STATE = 1 << LifecycleEvent.SAVE_INSTANCE_STATE;
+    int DESTROYED = 1 << LifecycleEvent.DESTROYED;
+    int RECREATED = 1 << LifecycleEvent.RECREATED;
+    /**
+     * Does not include RECREATED, so that existing listeners registered with ALL do not need to implement {@link OnActivityRecreatedListener}
+     */
+    int ALL = CREATED | STARTED | RESUMED | PAUSED | STOPPED | SAVE_INSTANCE_STATE | DESTROYED;
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed capacity ring buffer of lifecycle events stored in atomic primitive arrays.
+ * Only the main thread writes, so writing is a few ordered stores and one volatile write and never allocates.
+ * Any thread can take a {@link #snapshot(ActivityClassTable)} without locking, slots overwritten while copying are discarded
+ */
+final class LifecycleEventRecorder {
+
+    /**
+     * The largest capacity that can be rounded up to a power of two
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private final int mask;
+    /*
+     * Written with lazySet, which orders the stores after the volatile write of the previous writeCount
+     * and lets a reader that sees them also see that writeCount
+     */
+    @NonNull
+    private final AtomicIntegerArray activityIds;
+    @NonNull
+    private final AtomicIntegerArray classIndexes;
+    @NonNull
+    private final AtomicIntegerArray events;
+    @NonNull
+    private final AtomicLongArray timestamps;
+    /**
+     * Number of events written so far, the event with sequence n is in slot n & mask
+     */
+    private volatile long writeCount;
+
+    /**
+     * @param capacity Rounded up to a power of two, 1 to {@link #MAX_CAPACITY}
+     */
+    LifecycleEventRecorder(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be in 1.." + MAX_CAPACITY + ": " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.activityIds = new AtomicIntegerArray(size);
+        this.classIndexes = new AtomicIntegerArray(size);
+        this.events = new AtomicIntegerArray(size);
+        this.timestamps = new AtomicLongArray(size);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    void record(int activityId, int classIndex, @LifecycleEvent int event, long timestampNanos) {
+        long sequence = writeCount;
+        int index = (int) (sequence & mask);
+        activityIds.lazySet(index, activityId);
+        classIndexes.lazySet(index, classIndex);
+        events.lazySet(index, event);
+        timestamps.lazySet(index, timestampNanos);
+        writeCount = sequence + 1;
+    }
+
+    @NonNull
+    LifecycleEventLog snapshot(@NonNull ActivityClassTable classTable) {
+        int capacity = mask + 1;
+        long end = writeCount;
+        long start = Math.max(0, end - capacity);
+        int count = (int) (end - start);
+        int[] activityIds = new int[count];
+        int[] classIndexes = new int[count];
+        int[] events = new int[count];
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((start + i) & mask);
+            activityIds[i] = this.activityIds.get(index);
+            classIndexes[i] = this.classIndexes.get(index);
+            events[i] = this.events.get(index);
+            timestamps[i] = this.timestamps.get(index);
+        }
+
+        // The writer may have overwritten the oldest slots while copying, including the one it is writing right now.
+        // The volatile reads above keep the copy before the second read of writeCount
+        long endAfter = writeCount;
+        long validStart = Math.max(start, endAfter + 1 - capacity);
+        int skip = (int) Math.min(count, validStart - start);
+
+        String[] classNames = new String[count - skip];
+        for (int i = skip; i < count; i++) {
+            classNames[i - skip] = classTable.getClassName(classIndexes[i]);
+        }
+        return new LifecycleEventLog(start + skip, skip, count - skip, activityIds, classNames, events, timestamps);
+    }
+}
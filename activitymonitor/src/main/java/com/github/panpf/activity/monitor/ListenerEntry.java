@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A registration in {@link ListenerRegistry}, immutable apart from the profiling stats, changing the mask replaces the entry
+ */
+final class ListenerEntry {
+
+    /**
+     * The listener as registered, an {@link AsyncListener} when registered with {@link AsyncDispatchPolicy}
+     */
+    @NonNull
+    final Object listener;
+    @LifecycleEventMask
+    final int eventMask;
+    /**
+     * true: The listener is an {@link OnActivityLifecycleChangedListener} that receives every event in the mask;
+     * false: The listener implements the OnActivityXxxListener of every event in the mask
+     */
+    final boolean lifecycleChanged;
+    /**
+     * Only activities of these classes or their subclasses are delivered, null means all activities
+     */
+    @Nullable
+    final Class<?>[] activityClasses;
+    /**
+     * Index in the slots of {@link ListenerRegistry}, kept when the entry is replaced
+     */
+    final int slot;
+    /**
+     * Registration sequence, kept when the entry is replaced. Orders the dispatch arrays and tells a reused slot apart for its {@link Subscription}
+     */
+    final long order;
+    /**
+     * Created on the first profiled dispatch, only written by the main thread. Goes away together with the registration
+     */
+    @Nullable
+    volatile ListenerStats stats;
+
+    ListenerEntry(@NonNull Object listener, @LifecycleEventMask int eventMask, boolean lifecycleChanged,
+                  @Nullable Class<?>[] activityClasses, int slot, long order) {
+        this.listener = listener;
+        this.eventMask = eventMask;
+        this.lifecycleChanged = lifecycleChanged;
+        this.activityClasses = activityClasses;
+        this.slot = slot;
+        this.order = order;
+    }
+
+    @NonNull
+    ListenerEntry withEventMask(@LifecycleEventMask int eventMask) {
+        ListenerEntry entry = new ListenerEntry(listener, eventMask, lifecycleChanged, activityClasses, slot, order);
+        entry.stats = stats;
+        return entry;
+    }
+
+    boolean accepts(@NonNull Class<? extends Activity> activityClass) {
+        Class<?>[] activityClasses = this.activityClasses;
+        if (activityClasses == null) {
+            return true;
+        }
+        for (Class<?> acceptedClass : activityClasses) {
+            if (acceptedClass.isAssignableFrom(activityClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matches(@NonNull Object listener) {
+        return listener.equals(this.listener)
+                || (this.listener instanceof AsyncListener && listener.equals(((AsyncListener) this.listener).delegate));
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * All registered listeners in one place. For every {@link LifecycleEvent} a dispatch array of the interested entries
+ * is precomputed and published through a volatile field, so dispatching is a single lock-free loop over exactly the listeners that want the event.
+ * Once a listener is registered for specific Activity classes, every Activity class seen so far gets its own dispatch arrays,
+ * kept up to date on the registering thread, so a listener for other classes costs nothing. Only the first event of an Activity class
+ * not seen before takes the lock once to add its arrays.
+ * Registrations live in reusable slots, so a {@link Subscription} finds its registration in O(1). A change copies only the dispatch arrays
+ * of the events in the entry's mask, inserting or removing that one entry in place without sorting, under the lock on the registering thread
+ */
+final class ListenerRegistry {
+
+    private static final int EVENT_COUNT = LifecycleEvent.RECREATED + 1;
+    private static final int ALL_EVENTS = LifecycleEventMask.ALL | LifecycleEventMask.RECREATED;
+    @NonNull
+    private static final ListenerEntry[] EMPTY_ENTRIES = new ListenerEntry[0];
+    @NonNull
+    private static final Comparator<ListenerEntry> REGISTRATION_ORDER = new Comparator<ListenerEntry>() {
+        @Override
+        public int compare(ListenerEntry o1, ListenerEntry o2) {
+            return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+        }
+    };
+    /**
+     * Specific listeners come first, then {@link OnActivityLifecycleChangedListener}, both in registration order
+     */
+    @NonNull
+    private static final Comparator<ListenerEntry> DISPATCH_ORDER = new Comparator<ListenerEntry>() {
+        @Override
+        public int compare(ListenerEntry o1, ListenerEntry o2) {
+            if (o1.lifecycleChanged != o2.lifecycleChanged) {
+                return o1.lifecycleChanged ? 1 : -1;
+            }
+            return REGISTRATION_ORDER.compare(o1, o2);
+        }
+    };
+
+    @NonNull
+    private final Object lock = new Object();
+    /*
+     * Guarded by lock. Slots below usedSlotCount that are null are in freeSlots
+     */
+    @NonNull
+    private ListenerEntry[] slots = new ListenerEntry[8];
+    @NonNull
+    private int[] freeSlots = new int[8];
+    private int freeSlotCount;
+    private int usedSlotCount;
+    private long nextOrder;
+    /**
+     * Guarded by lock. The Activity classes that got dispatch arrays of their own
+     */
+    @NonNull
+    private Class<?>[] knownClasses = new Class<?>[0];
+    /**
+     * Replaced under the lock after every change
+     */
+    @NonNull
+    private volatile DispatchTable dispatchTable = new DispatchTable(EMPTY_ENTRIES, emptyDispatchArrays(), 0, null);
+
+    /**
+     * Only called by the main thread
+     *
+     * @return Never modified, specific listeners come first, then {@link OnActivityLifecycleChangedListener}, both in registration order
+     */
+    @NonNull
+    ListenerEntry[] get(@LifecycleEvent int event, @NonNull Class<? extends Activity> activityClass) {
+        DispatchTable dispatchTable = this.dispatchTable;
+        HashMap<Class<?>, ListenerEntry[][]> classArrays = dispatchTable.classArrays;
+        if (classArrays == null) {
+            return dispatchTable.sharedArrays[event];
+        }
+        ListenerEntry[][] arrays = classArrays.get(activityClass);
+        return (arrays != null ? arrays : addActivityClass(activityClass))[event];
+    }
+
+    /**
+     * Once per Activity class, later changes keep its arrays up to date on the registering thread
+     */
+    @NonNull
+    private ListenerEntry[][] addActivityClass(@NonNull Class<? extends Activity> activityClass) {
+        synchronized (lock) {
+            DispatchTable dispatchTable = this.dispatchTable;
+            ListenerEntry[][] arrays = dispatchTable.classArrays != null ? dispatchTable.classArrays.get(activityClass) : null;
+            if (arrays != null) {
+                return arrays;
+            }
+            knownClasses = Arrays.copyOf(knownClasses, knownClasses.length + 1);
+            knownClasses[knownClasses.length - 1] = activityClass;
+            this.dispatchTable = dispatchTable.withActivityClass(activityClass);
+            return this.dispatchTable.get(activityClass);
+        }
+    }
+
+    @NonNull
+    Subscription add(@NonNull Object listener, @LifecycleEventMask int eventMask, boolean lifecycleChanged) {
+        return add(listener, eventMask, lifecycleChanged, null);
+    }
+
+    /**
+     * @param activityClasses null: All activities
+     * @return Already disposed if the mask contains no event
+     */
+    @NonNull
+    Subscription add(@NonNull Object listener, @LifecycleEventMask int eventMask, boolean lifecycleChanged, @Nullable Class<?>[] activityClasses) {
+        if ((eventMask & ALL_EVENTS) == 0) {
+            return new EntrySubscription(this, -1, -1);
+        }
+        synchronized (lock) {
+            int slot;
+            if (freeSlotCount > 0) {
+                slot = freeSlots[--freeSlotCount];
+            } else {
+                if (usedSlotCount == slots.length) {
+                    slots = Arrays.copyOf(slots, slots.length * 2);
+                    freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+                }
+                slot = usedSlotCount++;
+            }
+            long order = nextOrder++;
+            ListenerEntry entry = new ListenerEntry(listener, eventMask & ALL_EVENTS, lifecycleChanged, activityClasses, slot, order);
+            slots[slot] = entry;
+            dispatchTable = dispatchTable.with(entry, knownClasses);
+            return new EntrySubscription(this, slot, order);
+        }
+    }
+
+    /**
+     * Each event in the mask is removed from the first matching registration that contains it,
+     * a registration is dropped once its mask becomes empty
+     */
+    void remove(@NonNull Object listener, @LifecycleEventMask int eventMask, boolean lifecycleChanged) {
+        synchronized (lock) {
+            int remaining = eventMask;
+            for (ListenerEntry entry : dispatchTable.entries) {
+                if (remaining == 0) {
+                    break;
+                }
+                int hit = entry.eventMask & remaining;
+                if (hit == 0 || entry.lifecycleChanged != lifecycleChanged || !entry.matches(listener)) {
+                    continue;
+                }
+                remaining &= ~hit;
+                int newMask = entry.eventMask & ~hit;
+                if (newMask != 0) {
+                    ListenerEntry newEntry = entry.withEventMask(newMask);
+                    slots[entry.slot] = newEntry;
+                    dispatchTable = dispatchTable.without(entry, knownClasses).with(newEntry, knownClasses);
+                } else {
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Never modified, in registration order
+     */
+    @NonNull
+    ListenerEntry[] getEntries() {
+        return dispatchTable.entries;
+    }
+
+    boolean isRegistered(int slot, long order) {
+        synchronized (lock) {
+            return findEntry(slot, order) != null;
+        }
+    }
+
+    void remove(int slot, long order) {
+        synchronized (lock) {
+            ListenerEntry entry = findEntry(slot, order);
+            if (entry != null) {
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    @Nullable
+    private ListenerEntry findEntry(int slot, long order) {
+        if (slot < 0 || slot >= usedSlotCount) {
+            return null;
+        }
+        ListenerEntry entry = slots[slot];
+        return entry != null && entry.order == order ? entry : null;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void release(@NonNull ListenerEntry entry) {
+        slots[entry.slot] = null;
+        freeSlots[freeSlotCount++] = entry.slot;
+        dispatchTable = dispatchTable.without(entry, knownClasses);
+        if (entry.listener instanceof AsyncListener) {
+            ((AsyncListener) entry.listener).cancel();
+        }
+    }
+
+    @NonNull
+    private static ListenerEntry[][] emptyDispatchArrays() {
+        ListenerEntry[][] arrays = new ListenerEntry[EVENT_COUNT][];
+        Arrays.fill(arrays, EMPTY_ENTRIES);
+        return arrays;
+    }
+
+    /**
+     * @return A copy with the entry at its place in the given order
+     */
+    @NonNull
+    private static ListenerEntry[] insert(@NonNull ListenerEntry[] entries, @NonNull ListenerEntry entry, @NonNull Comparator<ListenerEntry> order) {
+        int index = entries.length;
+        while (index > 0 && order.compare(entries[index - 1], entry) > 0) {
+            index--;
+        }
+        ListenerEntry[] newEntries = new ListenerEntry[entries.length + 1];
+        System.arraycopy(entries, 0, newEntries, 0, index);
+        newEntries[index] = entry;
+        System.arraycopy(entries, index, newEntries, index + 1, entries.length - index);
+        return newEntries;
+    }
+
+    /**
+     * @return A copy without the entry, the same array if it does not contain it
+     */
+    @NonNull
+    private static ListenerEntry[] remove(@NonNull ListenerEntry[] entries, @NonNull ListenerEntry entry) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == entry) {
+                if (entries.length == 1) {
+                    return EMPTY_ENTRIES;
+                }
+                ListenerEntry[] newEntries = new ListenerEntry[entries.length - 1];
+                System.arraycopy(entries, 0, newEntries, 0, i);
+                System.arraycopy(entries, i + 1, newEntries, i, newEntries.length - i);
+                return newEntries;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Only the arrays of the events in the entry's mask are copied, the others are shared
+     */
+    @NonNull
+    private static ListenerEntry[][] update(@NonNull ListenerEntry[][] arrays, @NonNull ListenerEntry entry, boolean insert) {
+        ListenerEntry[][] newArrays = arrays.clone();
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            if ((entry.eventMask & (1 << event)) != 0) {
+                newArrays[event] = insert ? insert(arrays[event], entry, DISPATCH_ORDER) : remove(arrays[event], entry);
+            }
+        }
+        return newArrays;
+    }
+
+    /**
+     * An immutable set of registrations. Without class filters every Activity shares the same dispatch arrays,
+     * otherwise every known Activity class has its own, which are the shared ones if no filter accepts the class
+     */
+    private static final class DispatchTable {
+
+        /**
+         * In registration order
+         */
+        @NonNull
+        final ListenerEntry[] entries;
+        /**
+         * Of the entries without class filters
+         */
+        @NonNull
+        final ListenerEntry[][] sharedArrays;
+        private final int filteredCount;
+        /**
+         * null without class filters, never modified once published
+         */
+        @Nullable
+        final HashMap<Class<?>, ListenerEntry[][]> classArrays;
+
+        DispatchTable(@NonNull ListenerEntry[] entries, @NonNull ListenerEntry[][] sharedArrays, int filteredCount,
+                      @Nullable HashMap<Class<?>, ListenerEntry[][]> classArrays) {
+            this.entries = entries;
+            this.sharedArrays = sharedArrays;
+            this.filteredCount = filteredCount;
+            this.classArrays = classArrays;
+        }
+
+        @NonNull
+        DispatchTable with(@NonNull ListenerEntry entry, @NonNull Class<?>[] knownClasses) {
+            return change(entry, true, knownClasses);
+        }
+
+        @NonNull
+        DispatchTable without(@NonNull ListenerEntry entry, @NonNull Class<?>[] knownClasses) {
+            return change(entry, false, knownClasses);
+        }
+
+        @NonNull
+        private DispatchTable change(@NonNull ListenerEntry entry, boolean insert, @NonNull Class<?>[] knownClasses) {
+            boolean filtered = entry.activityClasses != null;
+            ListenerEntry[] newEntries = insert ? insert(entries, entry, REGISTRATION_ORDER) : remove(entries, entry);
+            ListenerEntry[][] newSharedArrays = filtered ? sharedArrays : update(sharedArrays, entry, insert);
+            int newFilteredCount = filtered ? (insert ? filteredCount + 1 : filteredCount - 1) : filteredCount;
+            if (newFilteredCount == 0) {
+                return new DispatchTable(newEntries, newSharedArrays, 0, null);
+            }
+
+            HashMap<Class<?>, ListenerEntry[][]> newClassArrays = new HashMap<>();
+            for (Class<?> knownClass : knownClasses) {
+                @SuppressWarnings("unchecked")
+                Class<? extends Activity> activityClass = (Class<? extends Activity>) knownClass;
+                ListenerEntry[][] arrays = classArrays != null ? classArrays.get(activityClass) : null;
+                boolean accepted = entry.accepts(activityClass);
+                if (arrays == null) {
+                    // The first class filter, every known class starts from the shared arrays
+                    arrays = accepted && filtered ? update(newSharedArrays, entry, insert) : newSharedArrays;
+                } else if (arrays == sharedArrays && (!filtered || !accepted)) {
+                    arrays = newSharedArrays;
+                } else if (accepted) {
+                    arrays = update(arrays, entry, insert);
+                }
+                newClassArrays.put(activityClass, arrays);
+            }
+            return new DispatchTable(newEntries, newSharedArrays, newFilteredCount, newClassArrays);
+        }
+
+        @NonNull
+        DispatchTable withActivityClass(@NonNull Class<? extends Activity> activityClass) {
+            if (classArrays == null) {
+                return this;
+            }
+            ListenerEntry[][] arrays = sharedArrays;
+            for (ListenerEntry entry : entries) {
+                if (entry.activityClasses != null && entry.accepts(activityClass)) {
+                    arrays = update(arrays, entry, true);
+                }
+            }
+            HashMap<Class<?>, ListenerEntry[][]> newClassArrays = new HashMap<>(classArrays);
+            newClassArrays.put(activityClass, arrays);
+            return new DispatchTable(entries, sharedArrays, filteredCount, newClassArrays);
+        }
+
+        @NonNull
+        ListenerEntry[][] get(@NonNull Class<? extends Activity> activityClass) {
+            ListenerEntry[][] arrays = classArrays != null ? classArrays.get(activityClass) : null;
+            return arrays != null ? arrays : sharedArrays;
+        }
+    }
+
+    /**
+     * Refers to the registration by slot, the order tells it apart from a later registration that reuses the slot.
+     * Disposing copies only the dispatch arrays of the events the registration was for
+     */
+    private static final class EntrySubscription implements Subscription {
+
+        @NonNull
+        private final ListenerRegistry registry;
+        private final int slot;
+        private final long order;
+
+        EntrySubscription(@NonNull ListenerRegistry registry, int slot, long order) {
+            this.registry = registry;
+            this.slot = slot;
+            this.order = order;
+        }
+
+        @Override
+        public void dispose() {
+            registry.remove(slot, order);
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return !registry.isRegistered(slot, order);
+        }
+    }
+}
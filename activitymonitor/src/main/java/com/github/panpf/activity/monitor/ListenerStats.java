@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Dispatch cost of a single listener, grouped by {@link LifecycleEvent}.
+ * Costs are kept in fixed power-of-two histograms, so recording never allocates and percentiles are
+ * approximate, they report the upper bound of the bucket they fall in.
+ * Written by the main thread without locking, values read from other threads may lag slightly
+ */
+public final class ListenerStats {
+
+    private static final int EVENT_COUNT = LifecycleEvent.RECREATED + 1;
+    /*
+     * Bucket i holds costs in [2^i, 2^(i+1)) nanoseconds, the last bucket holds everything above
+     */
+    private static final int BUCKET_COUNT = 40;
+
+    /**
+     * The profiling session that created these stats, stats of an earlier session are discarded
+     */
+    @NonNull
+    final DispatchProfiler profiler;
+    @NonNull
+    private final String listenerClassName;
+    @NonNull
+    private final long[][] histograms = new long[EVENT_COUNT][BUCKET_COUNT];
+    @NonNull
+    private final long[] counts = new long[EVENT_COUNT];
+    @NonNull
+    private final long[] totalNanos = new long[EVENT_COUNT];
+    @NonNull
+    private final long[] maxNanos = new long[EVENT_COUNT];
+
+    ListenerStats(@NonNull DispatchProfiler profiler, @NonNull String listenerClassName) {
+        this.profiler = profiler;
+        this.listenerClassName = listenerClassName;
+    }
+
+    void record(@LifecycleEvent int event, long costNanos) {
+        int bucket = costNanos > 0 ? 63 - Long.numberOfLeadingZeros(costNanos) : 0;
+        histograms[event][Math.min(bucket, BUCKET_COUNT - 1)]++;
+        counts[event]++;
+        totalNanos[event] += costNanos;
+        if (costNanos > maxNanos[event]) {
+            maxNanos[event] = costNanos;
+        }
+    }
+
+    @NonNull
+    public String getListenerClassName() {
+        return listenerClassName;
+    }
+
+    public long getCount(@LifecycleEvent int event) {
+        return counts[event];
+    }
+
+    public long getTotalNanos(@LifecycleEvent int event) {
+        return totalNanos[event];
+    }
+
+    public long getMaxNanos(@LifecycleEvent int event) {
+        return maxNanos[event];
+    }
+
+    /**
+     * @param percentile For example 0.5 for p50 and 0.99 for p99
+     * @return 0: There is no record of this event
+     */
+    public long getPercentileNanos(@LifecycleEvent int event, double percentile) {
+        long count = counts[event];
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.max(0d, Math.min(1d, percentile)));
+        long[] histogram = histograms[event];
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += histogram[i];
+            if (seen >= Math.max(rank, 1)) {
+                return i == BUCKET_COUNT - 1 ? maxNanos[event] : Math.min((1L << (i + 1)) - 1, maxNanos[event]);
+            }
+        }
+        return maxNanos[event];
+    }
+}
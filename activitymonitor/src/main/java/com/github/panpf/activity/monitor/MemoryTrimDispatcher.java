@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Forwards onTrimMemory() and onLowMemory() to the {@link OnMemoryTrimListener}s together with the state of the stacks
+ */
+final class MemoryTrimDispatcher implements ComponentCallbacks2 {
+
+    @NonNull
+    private static final OnMemoryTrimListener[] EMPTY_LISTENERS = new OnMemoryTrimListener[0];
+
+    /**
+     * When the started stack last became empty in the ElapsedClock time base, 0 while an Activity is started,
+     * -1 until the first Activity is stopped, so a process started in the background does not report the time since its start. Written by the main thread
+     */
+    private volatile long backgroundSinceNanos = -1;
+    @NonNull
+    private volatile OnMemoryTrimListener[] listeners = EMPTY_LISTENERS;
+
+    synchronized void addListener(@NonNull OnMemoryTrimListener listener) {
+        OnMemoryTrimListener[] oldListeners = listeners;
+        OnMemoryTrimListener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+        newListeners[oldListeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    synchronized void removeListener(@NonNull OnMemoryTrimListener listener) {
+        OnMemoryTrimListener[] oldListeners = listeners;
+        for (int i = 0; i < oldListeners.length; i++) {
+            if (oldListeners[i] == listener) {
+                OnMemoryTrimListener[] newListeners = new OnMemoryTrimListener[oldListeners.length - 1];
+                System.arraycopy(oldListeners, 0, newListeners, 0, i);
+                System.arraycopy(oldListeners, i + 1, newListeners, i, newListeners.length - i);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    void onFirstStarted() {
+        backgroundSinceNanos = 0;
+    }
+
+    void onLastStopped(long nowNanos) {
+        backgroundSinceNanos = nowNanos;
+    }
+
+    long getBackgroundMillis() {
+        long backgroundSinceNanos = this.backgroundSinceNanos;
+        return backgroundSinceNanos > 0 ? (ElapsedClock.nanos() - backgroundSinceNanos) / 1000000L : 0;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        OnMemoryTrimListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        MonitorState state = ActivityMonitor.snapshot();
+        long backgroundMillis = getBackgroundMillis();
+        for (OnMemoryTrimListener listener : listeners) {
+            listener.onMemoryTrim(level, state.getStartedActivityCount(), state.getResumedActivityCount(), backgroundMillis);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
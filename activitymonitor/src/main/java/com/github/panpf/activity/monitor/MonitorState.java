@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable and consistent view of all three stacks, rebuilt by the main thread on every transition.
+ * Use {@link ActivityMonitor#snapshot()} to get the latest one.
+ * Activities are still held weakly, so an Activity that has been collected is skipped by the getters.
+ * The snapshot keeps the Activity instances of its moment, a later recreation does not change it
+ */
+public final class MonitorState {
+
+    @NonNull
+    static final ActivityRecord.Reference[] EMPTY_REFERENCES = new ActivityRecord.Reference[0];
+    @NonNull
+    static final MonitorState EMPTY = new MonitorState(0, EMPTY_REFERENCES, EMPTY_REFERENCES, EMPTY_REFERENCES);
+
+    private final long version;
+    /*
+     * Ordered from the first Activity to the last Activity
+     */
+    @NonNull
+    final ActivityRecord.Reference[] createdReferences;
+    @NonNull
+    final ActivityRecord.Reference[] startedReferences;
+    @NonNull
+    final ActivityRecord.Reference[] resumedReferences;
+
+    MonitorState(long version, @NonNull ActivityRecord.Reference[] createdReferences,
+                 @NonNull ActivityRecord.Reference[] startedReferences, @NonNull ActivityRecord.Reference[] resumedReferences) {
+        this.version = version;
+        this.createdReferences = createdReferences;
+        this.startedReferences = startedReferences;
+        this.resumedReferences = resumedReferences;
+    }
+
+    /**
+     * Increases by one when the foreground flag, the started count or the last resumed Activity changes,
+     * two states with the same version agree on these, the other stacks may differ
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return -1: No Activity is resumed
+     */
+    int getLastResumedActivityId() {
+        return resumedReferences.length > 0 ? resumedReferences[resumedReferences.length - 1].record.id : -1;
+    }
+
+    public boolean isRunningForeground() {
+        return startedReferences.length > 0;
+    }
+
+    public int getCreatedActivityCount() {
+        return createdReferences.length;
+    }
+
+    public int getStartedActivityCount() {
+        return startedReferences.length;
+    }
+
+    public int getResumedActivityCount() {
+        return resumedReferences.length;
+    }
+
+    @NonNull
+    public List<Activity> getCreatedActivityList() {
+        return toActivityList(createdReferences);
+    }
+
+    @NonNull
+    public List<Activity> getStartedActivityList() {
+        return toActivityList(startedReferences);
+    }
+
+    @NonNull
+    public List<Activity> getResumedActivityList() {
+        return toActivityList(resumedReferences);
+    }
+
+    @Nullable
+    public Activity getFirstCreatedActivity() {
+        return createdReferences.length > 0 ? createdReferences[0].get() : null;
+    }
+
+    @Nullable
+    public Activity getFirstStartedActivity() {
+        return startedReferences.length > 0 ? startedReferences[0].get() : null;
+    }
+
+    @Nullable
+    public Activity getFirstResumedActivity() {
+        return resumedReferences.length > 0 ? resumedReferences[0].get() : null;
+    }
+
+    @Nullable
+    public Activity getLastCreatedActivity() {
+        return createdReferences.length > 0 ? createdReferences[createdReferences.length - 1].get() : null;
+    }
+
+    @Nullable
+    public Activity getLastStartedActivity() {
+        return startedReferences.length > 0 ? startedReferences[startedReferences.length - 1].get() : null;
+    }
+
+    @Nullable
+    public Activity getLastResumedActivity() {
+        return resumedReferences.length > 0 ? resumedReferences[resumedReferences.length - 1].get() : null;
+    }
+
+    @NonNull
+    static List<Activity> toActivityList(@NonNull ActivityRecord.Reference[] references) {
+        List<Activity> activityList = new ArrayList<>(references.length);
+        addActivities(references, activityList);
+        return activityList;
+    }
+
+    static int addActivities(@NonNull ActivityRecord.Reference[] references, @NonNull List<Activity> out) {
+        int count = 0;
+        for (ActivityRecord.Reference reference : references) {
+            Activity activity = reference.get();
+            if (activity != null) {
+                out.add(activity);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static void forEachActivity(@NonNull ActivityRecord.Reference[] references, @NonNull ActivityVisitor visitor, boolean fromLast) {
+        for (int i = 0, size = references.length; i < size; i++) {
+            Activity activity = references[fromLast ? size - 1 - i : i].get();
+            if (activity != null && !visitor.visitActivity(activity)) {
+                return;
+            }
+        }
+    }
+}
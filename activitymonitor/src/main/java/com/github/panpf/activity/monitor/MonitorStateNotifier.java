@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Conflates published {@link MonitorState}s into at most one notification per main loop turn. Only the latest state is delivered,
+ * and only when the foreground flag, the started count or the last resumed Activity differs from the last delivered state.
+ * Only these fields of the delivered state are kept, not the state itself
+ */
+final class MonitorStateNotifier implements Runnable {
+
+    @NonNull
+    private static final OnMonitorStateChangedListener[] EMPTY_LISTENERS = new OnMonitorStateChangedListener[0];
+
+    @Nullable
+    private Handler handler;
+    private boolean posted;
+    private long lastNotifiedVersion = MonitorState.EMPTY.getVersion();
+    private int lastNotifiedStartedCount;
+    private int lastNotifiedResumedActivityId = -1;
+    @NonNull
+    private volatile OnMonitorStateChangedListener[] listeners = EMPTY_LISTENERS;
+
+    synchronized void addListener(@NonNull OnMonitorStateChangedListener listener) {
+        OnMonitorStateChangedListener[] oldListeners = listeners;
+        OnMonitorStateChangedListener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+        newListeners[oldListeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    synchronized void removeListener(@NonNull OnMonitorStateChangedListener listener) {
+        OnMonitorStateChangedListener[] oldListeners = listeners;
+        for (int i = 0; i < oldListeners.length; i++) {
+            if (oldListeners[i] == listener) {
+                OnMonitorStateChangedListener[] newListeners = new OnMonitorStateChangedListener[oldListeners.length - 1];
+                System.arraycopy(oldListeners, 0, newListeners, 0, i);
+                System.arraycopy(oldListeners, i + 1, newListeners, i, newListeners.length - i);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called by the main thread after every new state is published
+     */
+    void onStatePublished() {
+        if (listeners.length == 0) {
+            // Keep following the state, so a listener registered later is compared with the state it was registered in
+            MonitorState state = ActivityMonitor.snapshot();
+            lastNotifiedVersion = state.getVersion();
+            lastNotifiedStartedCount = state.getStartedActivityCount();
+            lastNotifiedResumedActivityId = state.getLastResumedActivityId();
+            return;
+        }
+        if (posted) {
+            return;
+        }
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        posted = true;
+        handler.post(this);
+    }
+
+    @Override
+    public void run() {
+        posted = false;
+        MonitorState state = ActivityMonitor.snapshot();
+        long version = state.getVersion();
+        if (version == lastNotifiedVersion) {
+            return;
+        }
+        int startedCount = state.getStartedActivityCount();
+        int resumedActivityId = state.getLastResumedActivityId();
+        boolean changed = startedCount != lastNotifiedStartedCount || resumedActivityId != lastNotifiedResumedActivityId;
+        lastNotifiedVersion = version;
+        lastNotifiedStartedCount = startedCount;
+        lastNotifiedResumedActivityId = resumedActivityId;
+        if (!changed) {
+            // Changed and changed back within one main loop turn
+            return;
+        }
+        OnMonitorStateChangedListener[] listeners = this.listeners;
+        for (OnMonitorStateChangedListener listener : listeners) {
+            listener.onMonitorStateChanged(state);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * @see ActivityMonitor#enableLeakDetection(long, int, OnActivityLeakListener)
+ */
+public interface OnActivityLeakListener {
+    /**
+     * Called on the main thread when more destroyed activities are found still reachable
+     *
+     * @param retained All the classes that currently have retained instances, not only the new ones
+     */
+    void onActivityLeaked(@NonNull List<RetainedActivities> retained);
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+/**
+ * @see ActivityMonitor#registerMemoryTrimListener(OnMemoryTrimListener)
+ */
+public interface OnMemoryTrimListener {
+    /**
+     * Called on the main thread
+     *
+     * @param level            The ComponentCallbacks2.TRIM_MEMORY_* level, TRIM_MEMORY_COMPLETE for onLowMemory()
+     * @param backgroundMillis How long no Activity has been started, 0 while an Activity is started or until the first one has been stopped
+     */
+    void onMemoryTrim(int level, int startedActivityCount, int resumedActivityCount, long backgroundMillis);
+}
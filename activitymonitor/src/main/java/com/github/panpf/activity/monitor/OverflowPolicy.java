@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * What to do when the queue of an asynchronous listener is full
+ */
+@IntDef({OverflowPolicy.DROP_OLDEST, OverflowPolicy.DROP_NEWEST})
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE_PARAMETER, ElementType.FIELD, ElementType.LOCAL_VARIABLE, ElementType.PARAMETER, ElementType.METHOD})
+public @interface OverflowPolicy {
+    /**
+     * Discard the oldest pending event to make room for the new one
+     */
+    int DROP_OLDEST = 1;
+    /**
+     * Discard the new event
+     */
+    int DROP_NEWEST = 2;
+}
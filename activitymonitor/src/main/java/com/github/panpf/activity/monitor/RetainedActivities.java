@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Destroyed activities of one class that are still reachable after the leak detection delay and a GC hint
+ */
+public final class RetainedActivities {
+
+    @NonNull
+    private final String activityClassName;
+    private final int retainedCount;
+    private final long maxRetainedMillis;
+
+    RetainedActivities(@NonNull String activityClassName, int retainedCount, long maxRetainedMillis) {
+        this.activityClassName = activityClassName;
+        this.retainedCount = retainedCount;
+        this.maxRetainedMillis = maxRetainedMillis;
+    }
+
+    @NonNull
+    public String getActivityClassName() {
+        return activityClassName;
+    }
+
+    public int getRetainedCount() {
+        return retainedCount;
+    }
+
+    /**
+     * How long the oldest retained instance has been destroyed
+     */
+    public long getMaxRetainedMillis() {
+        return maxRetainedMillis;
+    }
+}
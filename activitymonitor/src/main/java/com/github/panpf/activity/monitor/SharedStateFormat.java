@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+/**
+ * Layout of the shared state file, see {@link SharedStateWriter} and {@link SharedStateReader}.
+ * Must not depend on Android so that it can be used by plain JVM processes
+ * <pre>
+ * header  HEADER_SIZE bytes: int magic, int format version, int slot count, int reserved
+ * slots   SLOT_COUNT * SLOT_SIZE bytes, one per process, see the SLOT_* offsets
+ * </pre>
+ * A slot is protected by a seqlock: the sequence is odd while the owner is writing it
+ */
+final class SharedStateFormat {
+
+    static final int MAGIC = 0x414D5353;
+    static final int FORMAT_VERSION = 1;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_FORMAT_VERSION = 4;
+    static final int OFFSET_SLOT_COUNT = 8;
+    static final int HEADER_SIZE = 16;
+
+    static final int SLOT_SEQUENCE = 0;
+    static final int SLOT_PID = 4;
+    static final int SLOT_CREATED_COUNT = 8;
+    static final int SLOT_STARTED_COUNT = 12;
+    static final int SLOT_RESUMED_COUNT = 16;
+    static final int SLOT_HEARTBEAT_INTERVAL_MILLIS = 20;
+    static final int SLOT_HEARTBEAT_MILLIS = 24;
+    static final int SLOT_SIZE = 32;
+
+    static final int SLOT_COUNT = 16;
+    static final int FILE_SIZE = HEADER_SIZE + SLOT_COUNT * SLOT_SIZE;
+
+    /**
+     * A started process whose heartbeat is older than this many intervals is considered dead
+     */
+    static final int MISSED_HEARTBEATS = 3;
+
+    private SharedStateFormat() {
+    }
+
+    static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
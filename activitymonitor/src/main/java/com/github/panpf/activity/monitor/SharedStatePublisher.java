@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Publishes the counts of this process through a {@link SharedStateWriter} on every transition, and heartbeats while an Activity
+ * is started so that readers can tell a killed foreground process from a live one. Driven by the main thread
+ */
+final class SharedStatePublisher implements Runnable {
+
+    static final int DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 2000;
+
+    @NonNull
+    final SharedStateWriter writer;
+    @NonNull
+    final SharedStateReader reader;
+    @NonNull
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int createdCount;
+    private int startedCount;
+    private int resumedCount;
+    private boolean heartbeating;
+
+    SharedStatePublisher(@NonNull SharedStateWriter writer) {
+        this.writer = writer;
+        this.reader = new SharedStateReader(writer.getBuffer().duplicate());
+    }
+
+    void publish(int createdCount, int startedCount, int resumedCount) {
+        this.createdCount = createdCount;
+        this.startedCount = startedCount;
+        this.resumedCount = resumedCount;
+        writer.publish(createdCount, startedCount, resumedCount, nowMillis());
+        if (startedCount > 0 && !heartbeating) {
+            heartbeating = true;
+            handler.postDelayed(this, writer.getHeartbeatIntervalMillis());
+        }
+    }
+
+    void stop() {
+        handler.removeCallbacks(this);
+        heartbeating = false;
+    }
+
+    @Override
+    public void run() {
+        writer.publish(createdCount, startedCount, resumedCount, nowMillis());
+        if (startedCount > 0) {
+            handler.postDelayed(this, writer.getHeartbeatIntervalMillis());
+        } else {
+            heartbeating = false;
+        }
+    }
+
+    static long nowMillis() {
+        return ElapsedClock.nanos() / 1000000L;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the activity counts that all processes of the app publish into the shared state file,
+ * see {@link ActivityMonitor#enableSharedState(File)}. Reading is lock free and does not involve IPC.
+ * A process that stopped heartbeating while it had started activities is ignored. A background process does not heartbeat,
+ * so whether it still exists is checked in /proc at most once per heartbeat interval, a query otherwise only reads memory.
+ * Does not depend on Android, nowMillis must be in the time base of the writers, SystemClock.elapsedRealtime() on Android
+ */
+public final class SharedStateReader {
+
+    private static final int MAX_RETRIES = 16;
+    /**
+     * Without /proc, for example on macOS, whether a process is alive can not be told and every process is taken as alive
+     */
+    private static final boolean PROC_AVAILABLE = new File("/proc/self").exists();
+
+    @NonNull
+    private final ByteBuffer buffer;
+    /**
+     * The last liveness check of each slot. Racy, a lost update only costs another check
+     */
+    @NonNull
+    private final ProcessCheck[] processChecks = new ProcessCheck[SharedStateFormat.SLOT_COUNT];
+
+    SharedStateReader(@NonNull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map the file read only, the file must have been created by a writer
+     */
+    @NonNull
+    public static SharedStateReader open(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (randomAccessFile.length() < SharedStateFormat.FILE_SIZE) {
+                throw new IOException("Not a shared state file: " + file.getPath());
+            }
+            return new SharedStateReader(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, SharedStateFormat.FILE_SIZE));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return true: At least one live process has a started Activity
+     */
+    public boolean isAppForeground(long nowMillis) {
+        return getStartedActivityCount(nowMillis) > 0;
+    }
+
+    public int getCreatedActivityCount(long nowMillis) {
+        return sum(SharedStateFormat.SLOT_CREATED_COUNT, nowMillis);
+    }
+
+    public int getStartedActivityCount(long nowMillis) {
+        return sum(SharedStateFormat.SLOT_STARTED_COUNT, nowMillis);
+    }
+
+    public int getResumedActivityCount(long nowMillis) {
+        return sum(SharedStateFormat.SLOT_RESUMED_COUNT, nowMillis);
+    }
+
+    private int sum(int field, long nowMillis) {
+        if (buffer.getInt(SharedStateFormat.OFFSET_MAGIC) != SharedStateFormat.MAGIC) {
+            return 0;
+        }
+        int total = 0;
+        for (int slot = 0; slot < SharedStateFormat.SLOT_COUNT; slot++) {
+            total += readSlot(slot, field, nowMillis);
+        }
+        return total;
+    }
+
+    private int readSlot(int slot, int field, long nowMillis) {
+        int offset = SharedStateFormat.slotOffset(slot);
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            int sequence = buffer.getInt(offset + SharedStateFormat.SLOT_SEQUENCE);
+            if (sequence == 0) {
+                // Never written, most slots are, skip the fences
+                return 0;
+            }
+            if ((sequence & 1) != 0) {
+                continue;
+            }
+            Fences.loadLoad();
+            int pid = buffer.getInt(offset + SharedStateFormat.SLOT_PID);
+            int value = buffer.getInt(offset + field);
+            int startedCount = buffer.getInt(offset + SharedStateFormat.SLOT_STARTED_COUNT);
+            int heartbeatIntervalMillis = buffer.getInt(offset + SharedStateFormat.SLOT_HEARTBEAT_INTERVAL_MILLIS);
+            long heartbeatMillis = buffer.getLong(offset + SharedStateFormat.SLOT_HEARTBEAT_MILLIS);
+            Fences.loadLoad();
+            if (buffer.getInt(offset + SharedStateFormat.SLOT_SEQUENCE) != sequence) {
+                continue;
+            }
+            if (value == 0) {
+                return 0;
+            }
+            // Only a started process heartbeats, one in the background can only be checked for being alive
+            boolean alive = startedCount > 0
+                    ? nowMillis - heartbeatMillis <= (long) heartbeatIntervalMillis * SharedStateFormat.MISSED_HEARTBEATS
+                    : isProcessAlive(slot, pid, heartbeatIntervalMillis, nowMillis);
+            return alive ? value : 0;
+        }
+        // The owner kept writing or died while writing, skip it rather than spinning
+        return 0;
+    }
+
+    private boolean isProcessAlive(int slot, int pid, int heartbeatIntervalMillis, long nowMillis) {
+        ProcessCheck check = processChecks[slot];
+        if (check != null && check.pid == pid
+                && nowMillis >= check.checkedMillis && nowMillis - check.checkedMillis <= heartbeatIntervalMillis) {
+            return check.alive;
+        }
+        boolean alive = pid > 0 && (!PROC_AVAILABLE || new File("/proc/" + pid).exists());
+        processChecks[slot] = new ProcessCheck(pid, nowMillis, alive);
+        return alive;
+    }
+
+    private static final class ProcessCheck {
+
+        final int pid;
+        final long checkedMillis;
+        final boolean alive;
+
+        ProcessCheck(int pid, long checkedMillis, boolean alive) {
+            this.pid = pid;
+            this.checkedMillis = checkedMillis;
+            this.alive = alive;
+        }
+    }
+}
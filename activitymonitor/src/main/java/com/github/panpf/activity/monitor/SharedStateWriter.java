@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Owns one slot of the shared state file, see {@link SharedStateFormat}. The slot is claimed by locking its byte range,
+ * the lock is released by the kernel when the process dies, so the slot of a dead process can be claimed again.
+ * Only one thread writes. Does not depend on Android
+ */
+final class SharedStateWriter {
+
+    @NonNull
+    private final RandomAccessFile randomAccessFile;
+    @NonNull
+    private final MappedByteBuffer buffer;
+    @NonNull
+    private final FileLock slotLock;
+    private final int slotOffset;
+    private final int heartbeatIntervalMillis;
+    private int sequence;
+
+    SharedStateWriter(@NonNull File file, int pid, int heartbeatIntervalMillis) throws IOException {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        boolean success = false;
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            FileLock headerLock = channel.lock(0, SharedStateFormat.HEADER_SIZE, false);
+            try {
+                if (randomAccessFile.length() < SharedStateFormat.FILE_SIZE) {
+                    randomAccessFile.setLength(SharedStateFormat.FILE_SIZE);
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SharedStateFormat.FILE_SIZE);
+                if (buffer.getInt(SharedStateFormat.OFFSET_MAGIC) != SharedStateFormat.MAGIC
+                        || buffer.getInt(SharedStateFormat.OFFSET_FORMAT_VERSION) != SharedStateFormat.FORMAT_VERSION) {
+                    for (int i = 0; i < SharedStateFormat.FILE_SIZE; i += 4) {
+                        buffer.putInt(i, 0);
+                    }
+                    buffer.putInt(SharedStateFormat.OFFSET_FORMAT_VERSION, SharedStateFormat.FORMAT_VERSION);
+                    buffer.putInt(SharedStateFormat.OFFSET_SLOT_COUNT, SharedStateFormat.SLOT_COUNT);
+                    Fences.storeStore();
+                    buffer.putInt(SharedStateFormat.OFFSET_MAGIC, SharedStateFormat.MAGIC);
+                }
+            } finally {
+                headerLock.release();
+            }
+
+            FileLock slotLock = null;
+            int slot = 0;
+            for (; slot < SharedStateFormat.SLOT_COUNT && slotLock == null; slot++) {
+                try {
+                    slotLock = channel.tryLock(SharedStateFormat.slotOffset(slot), SharedStateFormat.SLOT_SIZE, false);
+                } catch (OverlappingFileLockException e) {
+                    // Held by another writer of this process
+                }
+            }
+            if (slotLock == null) {
+                throw new IOException("No free slot in " + file.getPath());
+            }
+            this.slotLock = slotLock;
+            this.slotOffset = SharedStateFormat.slotOffset(slot - 1);
+            this.sequence = buffer.getInt(slotOffset + SharedStateFormat.SLOT_SEQUENCE) & ~1;
+            write(pid, 0, 0, 0, 0);
+            success = true;
+        } finally {
+            if (!success) {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    int getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    @NonNull
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    void publish(int createdCount, int startedCount, int resumedCount, long nowMillis) {
+        write(buffer.getInt(slotOffset + SharedStateFormat.SLOT_PID), createdCount, startedCount, resumedCount, nowMillis);
+    }
+
+    private void write(int pid, int createdCount, int startedCount, int resumedCount, long nowMillis) {
+        MappedByteBuffer buffer = this.buffer;
+        int offset = slotOffset;
+        buffer.putInt(offset + SharedStateFormat.SLOT_SEQUENCE, ++sequence);
+        // Readers must see the odd sequence before any of the new data
+        Fences.storeStore();
+        buffer.putInt(offset + SharedStateFormat.SLOT_PID, pid);
+        buffer.putInt(offset + SharedStateFormat.SLOT_CREATED_COUNT, createdCount);
+        buffer.putInt(offset + SharedStateFormat.SLOT_STARTED_COUNT, startedCount);
+        buffer.putInt(offset + SharedStateFormat.SLOT_RESUMED_COUNT, resumedCount);
+        buffer.putInt(offset + SharedStateFormat.SLOT_HEARTBEAT_INTERVAL_MILLIS, heartbeatIntervalMillis);
+        buffer.putLong(offset + SharedStateFormat.SLOT_HEARTBEAT_MILLIS, nowMillis);
+        Fences.storeStore();
+        buffer.putInt(offset + SharedStateFormat.SLOT_SEQUENCE, ++sequence);
+    }
+
+    /**
+     * Clear the slot and give it up
+     */
+    void close() throws IOException {
+        write(0, 0, 0, 0, 0);
+        slotLock.release();
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+/**
+ * A registration returned by the register methods of {@link ActivityMonitor}. For an Activity lifecycle listener disposing it finds
+ * the registration in O(1) and removes exactly this registration even if the same listener is registered several times,
+ * for the other listeners it is the same as calling the unregister method
+ *
+ * @see CompositeSubscription
+ */
+public interface Subscription {
+
+    /**
+     * Unregister, calling it again does nothing
+     */
+    void dispose();
+
+    /**
+     * @return true: Disposed. For an Activity lifecycle listener also true once it was unregistered with the unregister methods
+     */
+    boolean isDisposed();
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The monitor is installed once per process, so this is the only test that installs it. Its cost is measured by InstallBenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ActivityMonitorInstallTest {
+
+    @Test
+    public void testInstallTwice() {
+        Application application = RuntimeEnvironment.getApplication();
+        ActivityMonitor.install(application);
+        ActivityMonitor.install(application);
+        assertTrue(ActivityMonitor.isInstalled());
+
+        final int[] createdCount = new int[1];
+        Subscription subscription = ActivityMonitor.registerActivityCreatedListener(new OnActivityCreatedListener() {
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState, boolean first) {
+                createdCount[0]++;
+            }
+        });
+        int createdActivityCount = ActivityMonitor.getCreatedActivityCount();
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).create();
+        try {
+            // The callbacks of a second install would deliver every event twice
+            assertEquals(1, createdCount[0]);
+            assertEquals(createdActivityCount + 1, ActivityMonitor.getCreatedActivityCount());
+        } finally {
+            controller.destroy();
+            subscription.dispose();
+        }
+    }
+}
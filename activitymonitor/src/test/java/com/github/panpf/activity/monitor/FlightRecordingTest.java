@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecordingTest {
+
+    private static final int CAPACITY = 8;
+    private static final String[] CLASS_NAMES = {"com.example.MainActivity", "com.example.DetailActivity"};
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("flight", ".rec");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        writeRecording(file, CAPACITY, 5);
+        FlightRecording recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        assertEquals(1234L, recording.getStartTimeMillis());
+        assertEquals(42, recording.getPid());
+        assertEquals(3, recording.getCreatedActivityCount());
+        assertEquals(2, recording.getStartedActivityCount());
+        assertEquals(1, recording.getResumedActivityCount());
+        assertEquals(4, recording.getLastCreatedActivityId());
+        assertEquals(CLASS_NAMES[0], recording.getLastCreatedActivityClassName());
+        assertEquals(-1, recording.getLastResumedActivityId());
+        assertNull(recording.getLastResumedActivityClassName());
+        assertEvents(recording.getEvents(), 0, 5);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ActivityClassTable classTable = new ActivityClassTable();
+        int[] classIndexes = {classTable.indexOf(MainActivity.class), classTable.indexOf(DetailActivity.class)};
+        long startTimeMillis = System.currentTimeMillis();
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY, 42);
+        int eventCount = CAPACITY + 4;
+        for (int i = 0; i < eventCount; i++) {
+            recorder.record(classTable, i, classIndexes[i % 2], i % (LifecycleEvent.DESTROYED + 1), 1000L * i,
+                    i, i / 2, i / 3, null, null);
+        }
+
+        FlightRecording recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        assertTrue(recording.getStartTimeMillis() >= startTimeMillis);
+        assertEquals(42, recording.getPid());
+        int last = eventCount - 1;
+        assertEquals(last, recording.getCreatedActivityCount());
+        assertEquals(last / 2, recording.getStartedActivityCount());
+        assertEquals(last / 3, recording.getResumedActivityCount());
+        assertEquals(-1, recording.getLastCreatedActivityId());
+        assertNull(recording.getLastResumedActivityClassName());
+
+        LifecycleEventLog events = recording.getEvents();
+        assertEquals(CAPACITY - 1, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            int sequence = eventCount - (CAPACITY - 1) + i;
+            assertEquals(sequence, events.getSequence(i));
+            assertEquals(sequence, events.getActivityId(i));
+            assertEquals((sequence % 2 == 0 ? MainActivity.class : DetailActivity.class).getName(), events.getActivityClassName(i));
+            assertEquals(sequence % (LifecycleEvent.DESTROYED + 1), events.getEvent(i));
+            assertEquals(1000L * sequence, events.getTimestampNanos(i));
+        }
+    }
+
+    @Test
+    public void testWrapAround() throws IOException {
+        writeRecording(file, CAPACITY, 20);
+        FlightRecording recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        // The slot of the next, uncounted event may be half written, so one slot less than the capacity is decoded
+        assertEvents(recording.getEvents(), 20 - (CAPACITY - 1), CAPACITY - 1);
+    }
+
+    @Test
+    public void testCountBoundary() throws IOException {
+        writeRecording(file, CAPACITY, CAPACITY - 1);
+        FlightRecording recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        assertEvents(recording.getEvents(), 0, CAPACITY - 1);
+
+        writeRecording(file, CAPACITY, CAPACITY);
+        recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        assertEvents(recording.getEvents(), 1, CAPACITY - 1);
+
+        writeRecording(file, CAPACITY, 0);
+        recording = FlightRecording.read(file);
+        assertNotNull(recording);
+        assertEquals(0, recording.getEvents().size());
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        assertNull(FlightRecording.read(new File(file.getPath() + ".missing")));
+
+        writeRecording(file, CAPACITY, 3);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(FlightRecorderFormat.fileSize(CAPACITY, FlightRecorderFormat.DEFAULT_CLASS_AREA_SIZE) - 1);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertNull(FlightRecording.read(file));
+
+        writeRecording(file, CAPACITY, 3);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(FlightRecorderFormat.OFFSET_MAGIC);
+            randomAccessFile.writeInt(0);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertNull(FlightRecording.read(file));
+    }
+
+    private static final class MainActivity {
+    }
+
+    private static final class DetailActivity {
+    }
+
+    private static void assertEvents(LifecycleEventLog events, long firstSequence, int count) {
+        assertEquals(count, events.size());
+        for (int i = 0; i < count; i++) {
+            long sequence = firstSequence + i;
+            assertEquals(sequence, events.getSequence(i));
+            assertEquals((int) sequence, events.getActivityId(i));
+            assertEquals(CLASS_NAMES[(int) (sequence % CLASS_NAMES.length)], events.getActivityClassName(i));
+            assertEquals((int) (sequence % (LifecycleEvent.DESTROYED + 1)), events.getEvent(i));
+            assertEquals(1000L * sequence, events.getTimestampNanos(i));
+        }
+    }
+
+    /**
+     * Encodes a session the way FlightRecorder does, the event with sequence n has activity id n. The slot of the next event,
+     * which a writer dying mid-write leaves uncounted, is filled with garbage
+     */
+    private static void writeRecording(File file, int capacity, int writeCount) throws IOException {
+        int classAreaSize = FlightRecorderFormat.DEFAULT_CLASS_AREA_SIZE;
+        int classAreaOffset = FlightRecorderFormat.HEADER_SIZE + capacity * FlightRecorderFormat.EVENT_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(FlightRecorderFormat.fileSize(capacity, classAreaSize));
+        buffer.putInt(FlightRecorderFormat.OFFSET_MAGIC, FlightRecorderFormat.MAGIC);
+        buffer.putInt(FlightRecorderFormat.OFFSET_FORMAT_VERSION, FlightRecorderFormat.FORMAT_VERSION);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CAPACITY, capacity);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_AREA_SIZE, classAreaSize);
+        buffer.putLong(FlightRecorderFormat.OFFSET_WRITE_COUNT, writeCount);
+        buffer.putLong(FlightRecorderFormat.OFFSET_START_TIME_MILLIS, 1234L);
+        buffer.putInt(FlightRecorderFormat.OFFSET_PID, 42);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CREATED_COUNT, 3);
+        buffer.putInt(FlightRecorderFormat.OFFSET_STARTED_COUNT, 2);
+        buffer.putInt(FlightRecorderFormat.OFFSET_RESUMED_COUNT, 1);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_CREATED_ACTIVITY_ID, 4);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_CREATED_CLASS_INDEX, 0);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_ACTIVITY_ID, -1);
+        buffer.putInt(FlightRecorderFormat.OFFSET_LAST_RESUMED_CLASS_INDEX, -1);
+
+        buffer.position(classAreaOffset);
+        for (String className : CLASS_NAMES) {
+            byte[] bytes = className.getBytes(Charset.forName("UTF-8"));
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_COUNT, CLASS_NAMES.length);
+        buffer.putInt(FlightRecorderFormat.OFFSET_CLASS_NAME_BYTES, buffer.position() - classAreaOffset);
+
+        for (long sequence = 0; sequence < writeCount; sequence++) {
+            int offset = FlightRecorderFormat.HEADER_SIZE + (int) (sequence % capacity) * FlightRecorderFormat.EVENT_SIZE;
+            buffer.putLong(offset, 1000L * sequence);
+            buffer.putInt(offset + 8, (int) sequence);
+            buffer.putInt(offset + 12, (int) (sequence % CLASS_NAMES.length));
+            buffer.put(offset + 16, (byte) (sequence % (LifecycleEvent.DESTROYED + 1)));
+            buffer.putShort(offset + 18, (short) 3);
+            buffer.putShort(offset + 20, (short) 2);
+            buffer.putShort(offset + 22, (short) 1);
+        }
+        int uncountedOffset = FlightRecorderFormat.HEADER_SIZE + (writeCount % capacity) * FlightRecorderFormat.EVENT_SIZE;
+        buffer.putLong(uncountedOffset, -1L);
+        buffer.putInt(uncountedOffset + 8, -1);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            randomAccessFile.write(buffer.array());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
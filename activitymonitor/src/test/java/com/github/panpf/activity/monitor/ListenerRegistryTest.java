@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The registry only stores the listeners, so plain objects stand in for them
+ */
+public class ListenerRegistryTest {
+
+    @Test
+    public void testDispatchOrder() {
+        ListenerRegistry registry = new ListenerRegistry();
+        Object changed = new Object();
+        Object first = new Object();
+        Object second = new Object();
+        registry.add(changed, LifecycleEventMask.RESUMED | LifecycleEventMask.PAUSED, true);
+        registry.add(first, LifecycleEventMask.RESUMED, false);
+        registry.add(second, LifecycleEventMask.RESUMED | LifecycleEventMask.PAUSED, false);
+
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), first, second, changed);
+        assertListeners(registry.get(LifecycleEvent.PAUSED, MainActivity.class), second, changed);
+        assertListeners(registry.get(LifecycleEvent.CREATED, MainActivity.class));
+        assertListeners(registry.getEntries(), changed, first, second);
+    }
+
+    @Test
+    public void testDispose() {
+        ListenerRegistry registry = new ListenerRegistry();
+        Object first = new Object();
+        Object second = new Object();
+        Subscription firstSubscription = registry.add(first, LifecycleEventMask.RESUMED, false);
+        Subscription secondSubscription = registry.add(second, LifecycleEventMask.RESUMED, false);
+        ListenerEntry[] before = registry.get(LifecycleEvent.RESUMED, MainActivity.class);
+
+        firstSubscription.dispose();
+        assertTrue(firstSubscription.isDisposed());
+        assertFalse(secondSubscription.isDisposed());
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), second);
+        // Arrays handed out are never modified
+        assertListeners(before, first, second);
+
+        // The freed slot is reused, the old subscription must not reach the new registration
+        Object third = new Object();
+        Subscription thirdSubscription = registry.add(third, LifecycleEventMask.RESUMED, false);
+        firstSubscription.dispose();
+        assertFalse(thirdSubscription.isDisposed());
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), second, third);
+    }
+
+    @Test
+    public void testRemoveEvents() {
+        ListenerRegistry registry = new ListenerRegistry();
+        Object first = new Object();
+        Object second = new Object();
+        registry.add(first, LifecycleEventMask.RESUMED | LifecycleEventMask.PAUSED, false);
+        registry.add(second, LifecycleEventMask.RESUMED | LifecycleEventMask.PAUSED, false);
+
+        registry.remove(first, LifecycleEventMask.PAUSED, false);
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), first, second);
+        assertListeners(registry.get(LifecycleEvent.PAUSED, MainActivity.class), second);
+
+        registry.remove(first, LifecycleEventMask.RESUMED, false);
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), second);
+        assertListeners(registry.getEntries(), second);
+    }
+
+    @Test
+    public void testClassFilter() {
+        ListenerRegistry registry = new ListenerRegistry();
+        Object all = new Object();
+        Object main = new Object();
+        Object detail = new Object();
+        registry.add(all, LifecycleEventMask.RESUMED, false);
+        Subscription mainSubscription = registry.add(main, LifecycleEventMask.RESUMED, false, new Class<?>[]{MainActivity.class});
+        registry.add(detail, LifecycleEventMask.RESUMED, true, new Class<?>[]{DetailActivity.class});
+
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), all, main);
+        assertListeners(registry.get(LifecycleEvent.RESUMED, SubMainActivity.class), all, main);
+        assertListeners(registry.get(LifecycleEvent.RESUMED, DetailActivity.class), all, detail);
+
+        Object late = new Object();
+        registry.add(late, LifecycleEventMask.RESUMED, false);
+        mainSubscription.dispose();
+        assertListeners(registry.get(LifecycleEvent.RESUMED, MainActivity.class), all, late);
+        assertListeners(registry.get(LifecycleEvent.RESUMED, DetailActivity.class), all, late, detail);
+    }
+
+    private static void assertListeners(ListenerEntry[] entries, Object... listeners) {
+        List<Object> actual = new ArrayList<>();
+        for (ListenerEntry entry : entries) {
+            actual.add(entry.listener);
+        }
+        assertEquals(Arrays.asList(listeners), actual);
+    }
+
+    private static class MainActivity extends Activity {
+    }
+
+    private static class SubMainActivity extends MainActivity {
+    }
+
+    private static class DetailActivity extends Activity {
+    }
+}
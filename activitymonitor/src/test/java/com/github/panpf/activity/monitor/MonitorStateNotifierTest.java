@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Drives the monitor through its callbacks directly, the activities only serve as keys
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MonitorStateNotifierTest {
+
+    @Test
+    public void testRegisterInForegroundThenGoToBackground() {
+        Application.ActivityLifecycleCallbacks callbacks = ActivityMonitor.newLifecycleCallbacks();
+        Activity activity = Robolectric.buildActivity(Activity.class).get();
+        callbacks.onActivityCreated(activity, null);
+        callbacks.onActivityStarted(activity);
+        callbacks.onActivityResumed(activity);
+        ShadowLooper.idleMainLooper();
+
+        final List<MonitorState> states = new ArrayList<>();
+        Subscription subscription = ActivityMonitor.registerMonitorStateChangedListener(new OnMonitorStateChangedListener() {
+            @Override
+            public void onMonitorStateChanged(@NonNull MonitorState state) {
+                states.add(state);
+            }
+        });
+        try {
+            callbacks.onActivityPaused(activity);
+            callbacks.onActivityStopped(activity);
+            ShadowLooper.idleMainLooper();
+
+            assertEquals(1, states.size());
+            assertEquals(0, states.get(0).getStartedActivityCount());
+            assertFalse(states.get(0).isRunningForeground());
+        } finally {
+            subscription.dispose();
+            callbacks.onActivityDestroyed(activity);
+        }
+    }
+}
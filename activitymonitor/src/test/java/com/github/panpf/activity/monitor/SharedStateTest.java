@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Every writer runs in its own JVM, the way every process of an app has its own slot
+ */
+public class SharedStateTest {
+
+    private static final int HEARTBEAT_INTERVAL_MILLIS = 60 * 1000;
+
+    private File file;
+    private final List<Process> processes = new ArrayList<Process>();
+
+    @Before
+    public void setUp() throws IOException {
+        // Telling dead processes apart needs /proc
+        assumeTrue(new File("/proc/self").exists());
+        file = File.createTempFile("shared", ".state");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        if (file != null) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAggregate() throws IOException {
+        startWriter(2, 1, 1);
+        startWriter(3, 0, 0);
+        startWriter(1, 1, 0);
+
+        SharedStateReader reader = SharedStateReader.open(file);
+        long now = System.currentTimeMillis();
+        assertEquals(6, reader.getCreatedActivityCount(now));
+        assertEquals(2, reader.getStartedActivityCount(now));
+        assertEquals(1, reader.getResumedActivityCount(now));
+        assertTrue(reader.isAppForeground(now));
+    }
+
+    @Test
+    public void testKilledProcess() throws IOException, InterruptedException {
+        Process foreground = startWriter(2, 1, 1);
+        Process background = startWriter(3, 0, 0);
+        SharedStateReader reader = SharedStateReader.open(file);
+        assertEquals(5, reader.getCreatedActivityCount(System.currentTimeMillis()));
+
+        // A background process does not heartbeat, so only its pid tells that it is gone. The pid is checked once per heartbeat interval
+        background.destroyForcibly();
+        background.waitFor();
+        long now = System.currentTimeMillis() + HEARTBEAT_INTERVAL_MILLIS + 1;
+        assertEquals(2, reader.getCreatedActivityCount(now));
+        assertEquals(1, reader.getStartedActivityCount(now));
+
+        // A started process is only noticed by its missed heartbeats
+        foreground.destroyForcibly();
+        foreground.waitFor();
+        now = System.currentTimeMillis() + (long) HEARTBEAT_INTERVAL_MILLIS * (SharedStateFormat.MISSED_HEARTBEATS + 1);
+        assertEquals(0, reader.getCreatedActivityCount(now));
+        assertFalse(reader.isAppForeground(now));
+
+        // The kernel released the locks of the killed processes, their slots can be claimed again
+        startWriter(4, 0, 0);
+        assertEquals(4, reader.getCreatedActivityCount(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testStaleHeartbeat() throws IOException {
+        startWriter(2, 1, 1);
+        SharedStateReader reader = SharedStateReader.open(file);
+        long staleNow = System.currentTimeMillis() + (long) HEARTBEAT_INTERVAL_MILLIS * (SharedStateFormat.MISSED_HEARTBEATS + 1);
+        assertEquals(0, reader.getCreatedActivityCount(staleNow));
+        assertEquals(0, reader.getStartedActivityCount(staleNow));
+        assertFalse(reader.isAppForeground(staleNow));
+
+        // A live background process is counted however old its last heartbeat is
+        startWriter(3, 0, 0);
+        assertEquals(3, reader.getCreatedActivityCount(staleNow));
+    }
+
+    /**
+     * Starts a JVM that publishes the counts once and keeps its slot until it is killed or its stdin is closed
+     */
+    private Process startWriter(int createdCount, int startedCount, int resumedCount) throws IOException {
+        String classPath = codeSource(SharedStateWriter.class) + File.pathSeparator + codeSource(SharedStateTest.class);
+        ProcessBuilder builder = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", classPath, WriterProcess.class.getName(), file.getPath(),
+                String.valueOf(createdCount), String.valueOf(startedCount), String.valueOf(resumedCount));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        processes.add(process);
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        assertEquals("ready", output.readLine());
+        return process;
+    }
+
+    private static String codeSource(Class<?> clazz) {
+        try {
+            return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (java.net.URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class WriterProcess {
+
+        public static void main(String[] args) throws IOException {
+            String name = ManagementFactory.getRuntimeMXBean().getName();
+            int pid = Integer.parseInt(name.substring(0, name.indexOf('@')));
+            SharedStateWriter writer = new SharedStateWriter(new File(args[0]), pid, HEARTBEAT_INTERVAL_MILLIS);
+            writer.publish(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), System.currentTimeMillis());
+            System.out.println("ready");
+            System.out.flush();
+            //noinspection StatementWithEmptyBody
+            while (System.in.read() != -1) {
+            }
+            writer.close();
+        }
+    }
+}
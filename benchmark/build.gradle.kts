@@ -0,0 +1,32 @@
+plugins {
+    id("com.android.library")
+    id("androidx.benchmark")
+}
+
+android {
+    compileSdkVersion(property("COMPILE_SDK_VERSION").toString().toInt())
+
+    defaultConfig {
+        minSdkVersion(property("MIN_SDK_VERSION").toString().toInt())
+        targetSdkVersion(property("TARGET_SDK_VERSION").toString().toInt())
+
+        testInstrumentationRunner = "androidx.benchmark.junit4.AndroidBenchmarkRunner"
+    }
+
+    /*
+     * Benchmarks must run against a non-debuggable build to produce meaningful numbers
+     */
+    testBuildType = "release"
+    buildTypes {
+        getByName("release") {
+            isMinifyEnabled = false
+        }
+    }
+}
+
+dependencies {
+    androidTestImplementation(project(":activitymonitor"))
+    androidTestImplementation("androidx.benchmark:benchmark-junit4:${property("ANDROIDX_BENCHMARK")}")
+    androidTestImplementation("androidx.test:runner:${property("ANDROIDX_TEST_RUNNER")}")
+    androidTestImplementation("androidx.test.ext:junit:${property("ANDROIDX_TEST_JUNIT")}")
+}
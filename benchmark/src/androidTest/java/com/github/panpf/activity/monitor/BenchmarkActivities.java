@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub activities that are never attached to a window, they only serve as keys for the monitor
+ */
+final class BenchmarkActivities {
+
+    private BenchmarkActivities() {
+    }
+
+    /**
+     * Activity creates a Handler in its constructor, so it has to be instantiated on a Looper thread
+     */
+    @NonNull
+    static List<Activity> newActivities(final int count) {
+        final List<Activity> activities = new ArrayList<>(count);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    activities.add(new Activity());
+                }
+            }
+        });
+        return activities;
+    }
+
+    @NonNull
+    static Activity newActivity() {
+        return newActivities(1).get(0);
+    }
+
+    /**
+     * Leave the activity in the stopped state, like an Activity covered by another one
+     */
+    static void createInBackground(@NonNull Application.ActivityLifecycleCallbacks callbacks, @NonNull Activity activity) {
+        callbacks.onActivityCreated(activity, null);
+        callbacks.onActivityStarted(activity);
+        callbacks.onActivityResumed(activity);
+        callbacks.onActivityPaused(activity);
+        callbacks.onActivityStopped(activity);
+    }
+
+    static void createInForeground(@NonNull Application.ActivityLifecycleCallbacks callbacks, @NonNull Activity activity) {
+        callbacks.onActivityCreated(activity, null);
+        callbacks.onActivityStarted(activity);
+        callbacks.onActivityResumed(activity);
+    }
+
+    /**
+     * Pausing or stopping an Activity that is not resumed or started is a no-op for the monitor
+     */
+    static void destroy(@NonNull Application.ActivityLifecycleCallbacks callbacks, @NonNull Activity activity) {
+        callbacks.onActivityPaused(activity);
+        callbacks.onActivityStopped(activity);
+        callbacks.onActivityDestroyed(activity);
+    }
+}
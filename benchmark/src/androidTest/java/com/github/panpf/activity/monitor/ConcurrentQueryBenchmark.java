@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cost of the queries while other threads are querying at the same time and the main thread keeps transitioning
+ */
+@RunWith(Parameterized.class)
+public class ConcurrentQueryBenchmark {
+
+    private static final int STACK_DEPTH = 10;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int readerCount;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+    private Application.ActivityLifecycleCallbacks callbacks;
+    private List<Activity> activities;
+
+    public ConcurrentQueryBenchmark(int readerCount) {
+        this.readerCount = readerCount;
+    }
+
+    @Parameterized.Parameters(name = "readers={0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{1}, {4}, {16}, {64}});
+    }
+
+    @Before
+    public void setUp() {
+        callbacks = ActivityMonitor.newLifecycleCallbacks();
+        activities = BenchmarkActivities.newActivities(STACK_DEPTH);
+        for (int i = 0; i < STACK_DEPTH - 1; i++) {
+            BenchmarkActivities.createInBackground(callbacks, activities.get(i));
+        }
+        final Activity top = activities.get(STACK_DEPTH - 1);
+        BenchmarkActivities.createInForeground(callbacks, top);
+
+        running = true;
+        // The thread running the benchmark is one of the readers
+        for (int i = 0; i < readerCount - 1; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running) {
+                        runQueries();
+                    }
+                }
+            }));
+        }
+        // Stands in for the main thread
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    callbacks.onActivityPaused(top);
+                    callbacks.onActivityResumed(top);
+                }
+            }
+        }));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+        for (int i = STACK_DEPTH - 1; i >= 0; i--) {
+            BenchmarkActivities.destroy(callbacks, activities.get(i));
+        }
+    }
+
+    @Test
+    public void query() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            runQueries();
+        }
+    }
+
+    @Test
+    public void snapshot() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            MonitorState monitorState = ActivityMonitor.snapshot();
+            monitorState.isRunningForeground();
+            monitorState.getLastResumedActivity();
+            monitorState.getStartedActivityCount();
+        }
+    }
+
+    private static void runQueries() {
+        ActivityMonitor.isRunningForeground();
+        ActivityMonitor.getLastResumedActivity();
+        ActivityMonitor.getStartedActivityCount();
+    }
+}
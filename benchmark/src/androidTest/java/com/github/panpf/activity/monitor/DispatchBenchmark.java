@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cost of one lifecycle transition as the number of registered listeners grows
+ */
+@RunWith(Parameterized.class)
+public class DispatchBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int listenerCount;
+    @NonNull
+    private final List<CountingListener> listeners = new ArrayList<>();
+    private Application.ActivityLifecycleCallbacks callbacks;
+    private Activity activity;
+
+    public DispatchBenchmark(int listenerCount) {
+        this.listenerCount = listenerCount;
+    }
+
+    @Parameterized.Parameters(name = "listeners={0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{1}, {10}, {100}});
+    }
+
+    @Before
+    public void setUp() {
+        callbacks = ActivityMonitor.newLifecycleCallbacks();
+        activity = BenchmarkActivities.newActivity();
+        for (int i = 0; i < listenerCount; i++) {
+            CountingListener listener = new CountingListener();
+            listeners.add(listener);
+            ActivityMonitor.registerActivityCreatedListener(listener);
+            ActivityMonitor.registerActivityResumedListener(listener);
+            ActivityMonitor.registerActivityPausedListener(listener);
+            ActivityMonitor.registerActivityDestroyedListener(listener);
+            ActivityMonitor.registerActivityLifecycleChangedListener(listener);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (CountingListener listener : listeners) {
+            ActivityMonitor.unregisterActivityCreatedListener(listener);
+            ActivityMonitor.unregisterActivityResumedListener(listener);
+            ActivityMonitor.unregisterActivityPausedListener(listener);
+            ActivityMonitor.unregisterActivityDestroyedListener(listener);
+            ActivityMonitor.unregisterActivityLifecycleChangedListener(listener);
+        }
+        listeners.clear();
+    }
+
+    @Test
+    public void resumePause() {
+        BenchmarkActivities.createInForeground(callbacks, activity);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            callbacks.onActivityPaused(activity);
+            callbacks.onActivityResumed(activity);
+        }
+        BenchmarkActivities.destroy(callbacks, activity);
+    }
+
+    @Test
+    public void fullLifecycle() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            BenchmarkActivities.createInForeground(callbacks, activity);
+            BenchmarkActivities.destroy(callbacks, activity);
+        }
+    }
+
+    private static class CountingListener implements OnActivityCreatedListener, OnActivityResumedListener,
+            OnActivityPausedListener, OnActivityDestroyedListener, OnActivityLifecycleChangedListener {
+
+        private int count;
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState, boolean first) {
+            count++;
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity, boolean first) {
+            count++;
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity, boolean last) {
+            count++;
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity, boolean last) {
+            count++;
+        }
+
+        @Override
+        public void onActivityLifecycleChanged(@NonNull Activity activity, int newState) {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Cost of the reflective fences used by the shared state file, compared with recording an event, which needs none
+ */
+public class FenceBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void storeStore() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Fences.storeStore();
+        }
+    }
+
+    @Test
+    public void loadLoad() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Fences.loadLoad();
+        }
+    }
+
+    @Test
+    public void recordEvent() {
+        LifecycleEventRecorder recorder = new LifecycleEventRecorder(256);
+        BenchmarkState state = benchmarkRule.getState();
+        int activityId = 0;
+        while (state.keepRunning()) {
+            recorder.record(activityId++, 0, LifecycleEvent.RESUMED, activityId);
+        }
+    }
+}
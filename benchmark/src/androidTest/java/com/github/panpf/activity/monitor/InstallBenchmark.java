@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Application;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * What {@link ActivityMonitor#install(Application)} costs. The provider has already installed the monitor when the benchmark starts,
+ * so the first install is measured without loading the monitor's classes, that part only shows in a cold start trace
+ */
+public class InstallBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    /**
+     * Every call after the first one
+     */
+    @Test
+    public void repeatedInstall() {
+        Application application = getApplication();
+        ActivityMonitor.install(application);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ActivityMonitor.install(application);
+        }
+    }
+
+    /**
+     * The registration the first install does, the unregistration is included
+     */
+    @Test
+    public void firstInstallCallbacks() {
+        Application application = getApplication();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Application.ActivityLifecycleCallbacks callbacks = ActivityMonitor.newLifecycleCallbacks();
+            application.registerActivityLifecycleCallbacks(callbacks);
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+        }
+    }
+
+    private static Application getApplication() {
+        return (Application) InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Cost of a query of the shared state file with one foreground and one background slot
+ */
+public class SharedStateBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private File file;
+    private SharedStateWriter foregroundWriter;
+    private SharedStateWriter backgroundWriter;
+    private SharedStateReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "benchmark.state");
+        long now = SystemClock.elapsedRealtime();
+        foregroundWriter = new SharedStateWriter(file, Process.myPid(), SharedStatePublisher.DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+        foregroundWriter.publish(2, 1, 1, now);
+        backgroundWriter = new SharedStateWriter(file, Process.myPid(), SharedStatePublisher.DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+        backgroundWriter.publish(3, 0, 0, now);
+        reader = SharedStateReader.open(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        foregroundWriter.close();
+        backgroundWriter.close();
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void isAppForeground() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            reader.isAppForeground(SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Includes the background slot, whose process is checked in /proc at most once per heartbeat interval
+     */
+    @Test
+    public void createdActivityCount() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            reader.getCreatedActivityCount(SystemClock.elapsedRealtime());
+        }
+    }
+}
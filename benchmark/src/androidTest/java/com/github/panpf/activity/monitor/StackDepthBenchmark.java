@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 panpf <panpfpanpf@outlook.com>
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+
+package com.github.panpf.activity.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cost of transitions and queries as the Activity stack gets deeper
+ */
+@RunWith(Parameterized.class)
+public class StackDepthBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int depth;
+    private Application.ActivityLifecycleCallbacks callbacks;
+    private List<Activity> activities;
+
+    public StackDepthBenchmark(int depth) {
+        this.depth = depth;
+    }
+
+    @Parameterized.Parameters(name = "depth={0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{1}, {10}, {50}, {100}});
+    }
+
+    @Before
+    public void setUp() {
+        callbacks = ActivityMonitor.newLifecycleCallbacks();
+        activities = BenchmarkActivities.newActivities(depth);
+        for (int i = 0; i < depth - 1; i++) {
+            BenchmarkActivities.createInBackground(callbacks, activities.get(i));
+        }
+        BenchmarkActivities.createInForeground(callbacks, activities.get(depth - 1));
+    }
+
+    @After
+    public void tearDown() {
+        for (int i = depth - 1; i >= 0; i--) {
+            BenchmarkActivities.destroy(callbacks, activities.get(i));
+        }
+    }
+
+    /**
+     * Removing the bottom Activity is the worst case for a linear scan from the top
+     */
+    @Test
+    public void destroyAndRecreateBottom() {
+        Activity bottom = activities.get(0);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            callbacks.onActivityDestroyed(bottom);
+            callbacks.onActivityCreated(bottom, null);
+        }
+    }
+
+    @Test
+    public void pauseResumeTop() {
+        Activity top = activities.get(depth - 1);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            callbacks.onActivityPaused(top);
+            callbacks.onActivityResumed(top);
+        }
+    }
+
+    @Test
+    public void firstAndLastQueries() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ActivityMonitor.getFirstCreatedActivity();
+            ActivityMonitor.getLastCreatedActivity();
+        }
+    }
+
+    @Test
+    public void createdActivityList() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ActivityMonitor.getCreatedActivityList();
+        }
+    }
+}
@@ -12,6 +12,7 @@ buildscript {
         classpath("com.android.tools.build:gradle:${property("ANDROID_PLUGIN")}")
         classpath("org.jetbrains.kotlin:kotlin-gradle-plugin:${property("KOTLIN_VERSION")}")
         classpath("com.vanniktech:gradle-maven-publish-plugin:0.15.1")
+        classpath("androidx.benchmark:benchmark-gradle-plugin:${property("ANDROIDX_BENCHMARK")}")
         // NOTE: Do not place your application dependencies here; they belong
         // in the individual module build.gradle files
     }
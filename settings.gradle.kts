@@ -1 +1 @@
-include(":activitymonitor", ":sample")
+include(":activitymonitor", ":sample", ":benchmark")